@@ -0,0 +1,136 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Headless batch mode for the ATM ledger.
+// Reads one transaction per line and applies it to the ledger:
+//   account,DEPOSIT,amount
+//   account,WITHDRAW,amount
+//   account,TRANSFER,amount,toAccount
+//   account,OPEN,amount
+// Lines are streamed, so memory use does not grow with the file. Rejected
+// lines go to the report with a reason, followed by a summary.
+class ATMBatch {
+    private final Ledger ledger;
+    private long applied;
+    private long rejected;
+
+    public ATMBatch(Ledger ledger) {
+        this.ledger = ledger;
+    }
+
+    public void run(String inputFile, String reportFile) throws IOException {
+        long start = System.nanoTime();
+        long lineNumber = 0;
+        // Journal writes are batched and synced once at the end of the run
+        ledger.setDeferredSync(true);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                     new FileInputStream(inputFile), StandardCharsets.UTF_8), 1 << 16);
+             BufferedWriter report = new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(reportFile), StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String reason = apply(line);
+                if (reason == null) {
+                    applied++;
+                } else {
+                    rejected++;
+                    report.write("Line ");
+                    report.write(Long.toString(lineNumber));
+                    report.write(": ");
+                    report.write(reason);
+                    report.write(": ");
+                    report.write(line);
+                    report.newLine();
+                }
+            }
+            ledger.sync();
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            report.write("Applied: " + applied + ", rejected: " + rejected + ", in " + elapsed / 1_000_000
+                    + " ms (" + (applied + rejected) * 1_000_000_000L / elapsed + " lines/sec)");
+            report.newLine();
+        } finally {
+            ledger.setDeferredSync(false);
+        }
+    }
+
+    public long getApplied() {
+        return applied;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    // Returns null when applied, otherwise the reason for rejecting the line
+    private String apply(String line) {
+        int c1 = line.indexOf(',');
+        int c2 = c1 < 0 ? -1 : line.indexOf(',', c1 + 1);
+        if (c2 < 0) {
+            return "Malformed line";
+        }
+        int c3 = line.indexOf(',', c2 + 1);
+        int amountEnd = c3 < 0 ? line.length() : c3;
+
+        long account = parseAccount(line, 0, c1);
+        long paise = Money.parsePaise(line, c2 + 1, amountEnd);
+        if (account <= 0) {
+            return "Invalid account";
+        }
+        if (paise == Money.INVALID) {
+            return "Invalid amount";
+        }
+
+        Ledger.Status status;
+        if (is(line, c1 + 1, c2, "DEPOSIT")) {
+            status = ledger.deposit(account, paise);
+        } else if (is(line, c1 + 1, c2, "WITHDRAW")) {
+            status = ledger.withdraw(account, paise);
+        } else if (is(line, c1 + 1, c2, "TRANSFER")) {
+            long toAccount = c3 < 0 ? -1 : parseAccount(line, c3 + 1, line.length());
+            if (toAccount <= 0) {
+                return "Invalid target account";
+            }
+            status = ledger.transfer(account, toAccount, paise);
+        } else if (is(line, c1 + 1, c2, "OPEN")) {
+            status = ledger.open(account, paise);
+        } else {
+            return "Unknown operation";
+        }
+        return switch (status) {
+            case OK -> null;
+            case NO_ACCOUNT -> "No such account";
+            case INSUFFICIENT_FUNDS -> "Insufficient balance";
+            case ACCOUNT_EXISTS -> "Account already exists";
+            case INVALID_AMOUNT -> "Invalid amount";
+        };
+    }
+
+    private static long parseAccount(String line, int start, int end) {
+        while (start < end && line.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        try {
+            return Long.parseLong(line, start, end, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Case-insensitive match of line[start, end), ignoring surrounding spaces
+    private static boolean is(String line, int start, int end, String op) {
+        while (start < end && line.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return end - start == op.length() && line.regionMatches(true, start, op, 0, op.length());
+    }
+}
@@ -0,0 +1,234 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stress test and throughput benchmark for the ATM account classes.
+// Compile together with the ATM program and run one of the modes:
+//   javac ATMInterface.java ATMBenchmark.java
+//   java ATMBenchmark stress [threads]
+//   java ATMBenchmark accounts [threads]
+//   java ATMBenchmark ledger [threads]
+//   java ATMBenchmark journal [threads]
+//   java ATMBenchmark money [operations]
+public class ATMBenchmark {
+    private static final int OPS_PER_THREAD = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "stress";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+
+        switch (mode) {
+            case "stress" -> stress(threads);
+            case "accounts" -> accountThroughput(threads);
+            case "ledger" -> ledgerThroughput(threads);
+            case "journal" -> journalThroughput(threads);
+            case "money" -> moneyHotPath(args.length > 1 ? Long.parseLong(args[1]) : 1_000_000_000L);
+            default -> System.out.println("Unknown mode: " + mode);
+        }
+    }
+
+    // Hammers one account with deposits and withdrawals from many threads and
+    // checks that no update was lost and the balance never went negative.
+    private static void stress(int threads) throws Exception {
+        long initial = 1_000_00;
+        BankAccount account = new BankAccount(initial);
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicLong negativeSeen = new AtomicLong();
+
+        runThreads(threads, id -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long myDeposits = 0;
+            long myWithdrawals = 0;
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                long paise = 1 + random.nextInt(5_000);
+                if (random.nextBoolean()) {
+                    account.depositPaise(paise);
+                    myDeposits += paise;
+                } else if (account.tryWithdraw(paise)) {
+                    myWithdrawals += paise;
+                }
+                if (account.balancePaise() < 0) {
+                    negativeSeen.incrementAndGet();
+                }
+            }
+            deposited.addAndGet(myDeposits);
+            withdrawn.addAndGet(myWithdrawals);
+        });
+
+        long expected = initial + deposited.get() - withdrawn.get();
+        System.out.printf("Threads: %d, expected balance %d paise, actual %d paise, negative seen %d times%n",
+                threads, expected, account.balancePaise(), negativeSeen.get());
+        System.out.println(expected == account.balancePaise() && negativeSeen.get() == 0 ? "PASS" : "FAIL");
+    }
+
+    // Compares all threads sharing one account with each thread on its own
+    private static void accountThroughput(int threads) throws Exception {
+        BankAccount shared = new BankAccount(0);
+        long contended = runThreads(threads, id -> hammer(shared));
+
+        BankAccount[] own = new BankAccount[threads];
+        for (int i = 0; i < threads; i++) {
+            own[i] = new BankAccount(0);
+        }
+        long uncontended = runThreads(threads, id -> hammer(own[id]));
+
+        long ops = (long) threads * OPS_PER_THREAD;
+        System.out.printf("Threads: %d%n", threads);
+        System.out.printf("Contended:   %,d ops/sec%n", ops * 1_000_000_000L / contended);
+        System.out.printf("Uncontended: %,d ops/sec%n", ops * 1_000_000_000L / uncontended);
+    }
+
+    // Random transfers between a million accounts; the total must not change
+    private static void ledgerThroughput(int threads) throws Exception {
+        int accounts = 1_000_000;
+        Ledger ledger = new Ledger(accounts);
+        for (int i = 1; i <= accounts; i++) {
+            ledger.open(i, 1_000_00);
+        }
+        long before = ledger.totalPaise();
+
+        long elapsed = runThreads(threads, id -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                long from = 1 + random.nextInt(accounts);
+                long to = 1 + random.nextInt(accounts);
+                ledger.transfer(from, to, 1 + random.nextInt(10_000));
+            }
+        });
+
+        long ops = (long) threads * OPS_PER_THREAD;
+        System.out.printf("Threads: %d, accounts: %,d%n", threads, ledger.size());
+        System.out.printf("Ledger: %,d ops/sec%n", ops * 1_000_000_000L / elapsed);
+        System.out.printf("Total before %d paise, after %d paise%n", before, ledger.totalPaise());
+        System.out.println(before == ledger.totalPaise() ? "PASS" : "FAIL");
+    }
+
+    // Journaled deposits with one fsync per transaction versus group commit,
+    // then checks that replaying each journal gives back the same balances
+    private static void journalThroughput(int threads) throws Exception {
+        int opsPerThread = 2_000;
+        for (boolean group : new boolean[]{false, true}) {
+            Path file = Files.createTempFile("atm-journal", ".log");
+            Files.delete(file);
+            Ledger ledger = Ledger.recover(file.toString(), group);
+            for (int i = 1; i <= threads; i++) {
+                ledger.open(i, 0);
+            }
+            long elapsed = runThreads(threads, id -> {
+                for (int i = 0; i < opsPerThread; i++) {
+                    ledger.deposit(id + 1, 100);
+                }
+            });
+            ledger.close();
+
+            Ledger replayed = Ledger.recover(file.toString(), group);
+            boolean same = replayed.totalPaise() == ledger.totalPaise();
+            replayed.close();
+            Files.delete(file);
+
+            long ops = (long) threads * opsPerThread;
+            System.out.printf("%s: %,d tx/sec, replay %s%n", group ? "Group commit   " : "Per-transaction",
+                    ops * 1_000_000_000L / elapsed, same ? "matches" : "DIFFERS");
+        }
+    }
+
+    // Parses, deposits, withdraws and formats amounts in a loop. The totals
+    // must come out exact, and after warm-up the loop should allocate nothing.
+    private static void moneyHotPath(long operations) {
+        String[] amounts = {"0.01", "0.10", "19.99", "250", "1234.56"};
+        BankAccount account = new BankAccount(0);
+        StringBuilder buffer = new StringBuilder(32);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up so the JIT has compiled the loop before measuring
+        runMoneyLoop(account, amounts, buffer, 5_000_000);
+        account = new BankAccount(0);
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long t0 = System.nanoTime();
+        long expected = runMoneyLoop(account, amounts, buffer, operations);
+        long elapsed = System.nanoTime() - t0;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        // Replays the same deposits and withdrawals once in double rupees
+        // and once in paise, over the same number of operations
+        long compared = Math.min(operations, 100_000_000L);
+        double naive = 0;
+        long exact = 0;
+        for (long i = 0; i < compared; i++) {
+            String text = amounts[(int) (i % amounts.length)];
+            double rupees = Double.parseDouble(text);
+            long paise = Money.parsePaise(text, 0, text.length());
+            naive += rupees;
+            exact += paise;
+            if ((i & 7) == 0 && exact >= paise) {
+                naive -= rupees;
+                exact -= paise;
+            }
+        }
+
+        System.out.printf("Operations: %,d in %d ms (%,d ops/sec)%n",
+                operations, elapsed / 1_000_000, operations * 1_000_000_000L / Math.max(1, elapsed));
+        System.out.printf("Balance: %s, expected %s -> %s%n", Money.format(account.balancePaise()),
+                Money.format(expected), account.balancePaise() == expected ? "exact" : "WRONG");
+        System.out.printf("First %,d operations: double balance %.6f, exact %s, off by %.6f%n",
+                compared, naive, Money.format(exact), naive - exact / 100.0);
+        System.out.printf("Bytes allocated in the measured loop: %,d%n", allocated);
+    }
+
+    // Returns the exact expected balance, computed separately from the account
+    private static long runMoneyLoop(BankAccount account, String[] amounts, StringBuilder buffer, long operations) {
+        long expected = 0;
+        for (long i = 0; i < operations; i++) {
+            String text = amounts[(int) (i % amounts.length)];
+            long paise = Money.parsePaise(text, 0, text.length());
+            account.depositPaise(paise);
+            expected += paise;
+            if ((i & 7) == 0 && account.tryWithdraw(paise)) {
+                expected -= paise;
+            }
+            buffer.setLength(0);
+            Money.format(account.balancePaise(), buffer);
+        }
+        return expected;
+    }
+
+    private static void hammer(BankAccount account) {
+        for (int i = 0; i < OPS_PER_THREAD; i++) {
+            if ((i & 1) == 0) {
+                account.depositPaise(100);
+            } else {
+                account.tryWithdraw(100);
+            }
+        }
+    }
+
+    interface Worker {
+        void run(int id) throws Exception;
+    }
+
+    // Starts all workers together and returns the elapsed nanoseconds
+    static long runThreads(int threads, Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            int id = i;
+            futures[i] = pool.submit(() -> {
+                start.await();
+                worker.run(id);
+                return null;
+            });
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - t0;
+        pool.shutdown();
+        return elapsed;
+    }
+}
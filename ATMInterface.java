@@ -1,50 +1,19 @@
+import java.io.IOException;
 import java.util.Scanner;
 
-// Class to represent a user's bank account
-class BankAccount {
-    private double balance;
-
-    // Constructor to initialize account with a starting balance
-    public BankAccount(double initialBalance) {
-        balance = initialBalance;
-    }
-
-    // Deposit money into the account
-    public void deposit(double amount) {
-        if (amount > 0) {
-            balance += amount;
-            System.out.println("Deposited: Rs." + amount);
-        } else {
-            System.out.println("Invalid amount. Deposit must be greater than zero.");
-        }
-    }
-
-    // Withdraw money from the account
-    public void withdraw(double amount) {
-        if (amount > 0 && amount <= balance) {
-            balance -= amount;
-            System.out.println("Withdrawn: Rs." + amount);
-        } else if (amount > balance) {
-            System.out.println("Insufficient balance. Try a smaller amount.");
-        } else {
-            System.out.println("Invalid amount. Withdrawal must be greater than zero.");
-        }
-    }
-
-    // Check the current balance
-    public double checkBalance() {
-        return balance;
-    }
-}
-
 // Class to represent the ATM interface
+// Each ATM session is one client of the shared ledger.
 class ATM {
-    private BankAccount account;
+    private Ledger ledger;
+    private long accountNumber;
     private Scanner scanner;
+    // Reused for every message that shows an amount
+    private final StringBuilder message = new StringBuilder(64);
 
-    // Constructor to link ATM to a bank account
-    public ATM(BankAccount account) {
-        this.account = account;
+    // Constructor to link ATM to an account in the ledger
+    public ATM(Ledger ledger, long accountNumber) {
+        this.ledger = ledger;
+        this.accountNumber = accountNumber;
         scanner = new Scanner(System.in);
     }
 
@@ -56,40 +25,89 @@ class ATM {
             System.out.println("1. Check Balance");
             System.out.println("2. Deposit Money");
             System.out.println("3. Withdraw Money");
-            System.out.println("4. Exit");
-            System.out.print("Choose an option (1-4): ");
+            System.out.println("4. Transfer Money");
+            System.out.println("5. Exit");
+            System.out.print("Choose an option (1-5): ");
             choice = scanner.nextInt();
 
             switch (choice) {
                 case 1:
-                    System.out.println("Your current balance is: Rs." + account.checkBalance());
+                    printAmount("Your current balance is: Rs.", ledger.get(accountNumber).balancePaise(), "");
                     break;
                 case 2:
                     System.out.print("Enter amount to deposit: Rs.");
-                    double depositAmount = scanner.nextDouble();
-                    account.deposit(depositAmount);
+                    long depositAmount = readAmount();
+                    if (ledger.deposit(accountNumber, depositAmount) == Ledger.Status.OK) {
+                        printAmount("Deposited: Rs.", depositAmount, "");
+                    } else {
+                        System.out.println("Invalid amount. Deposit must be greater than zero.");
+                    }
                     break;
                 case 3:
                     System.out.print("Enter amount to withdraw: Rs.");
-                    double withdrawAmount = scanner.nextDouble();
-                    account.withdraw(withdrawAmount);
+                    long withdrawAmount = readAmount();
+                    switch (ledger.withdraw(accountNumber, withdrawAmount)) {
+                        case OK -> printAmount("Withdrawn: Rs.", withdrawAmount, "");
+                        case INSUFFICIENT_FUNDS -> System.out.println("Insufficient balance. Try a smaller amount.");
+                        default -> System.out.println("Invalid amount. Withdrawal must be greater than zero.");
+                    }
                     break;
                 case 4:
+                    System.out.print("Enter account number to transfer to: ");
+                    long toAccount = scanner.nextLong();
+                    System.out.print("Enter amount to transfer: Rs.");
+                    long transferAmount = readAmount();
+                    switch (ledger.transfer(accountNumber, toAccount, transferAmount)) {
+                        case OK -> printAmount("Transferred: Rs.", transferAmount, " to account " + toAccount);
+                        case NO_ACCOUNT -> System.out.println("Account " + toAccount + " does not exist.");
+                        case INSUFFICIENT_FUNDS -> System.out.println("Insufficient balance. Try a smaller amount.");
+                        default -> System.out.println("Invalid transfer. Check the account and amount.");
+                    }
+                    break;
+                case 5:
                     System.out.println("Thank you for using the ATM. Goodbye!");
                     break;
                 default:
-                    System.out.println("Invalid option. Please choose between 1 and 4.");
+                    System.out.println("Invalid option. Please choose between 1 and 5.");
             }
-        } while (choice != 4);
+        } while (choice != 5);
+    }
+
+    // Reads an amount such as 250 or 99.50 as exact paise; bad input gives
+    // Money.INVALID, which the ledger rejects as an invalid amount
+    private long readAmount() {
+        return Money.parsePaise(scanner.next());
+    }
+
+    private void printAmount(String label, long paise, String suffix) {
+        message.setLength(0);
+        message.append(label);
+        Money.format(paise, message);
+        message.append(suffix);
+        System.out.println(message);
     }
 }
 
 // Main class to run the ATM program
 public class ATMInterface {
-    public static void main(String[] args) {
-        // You can change the starting balance here
-        BankAccount myAccount = new BankAccount(10000); // Rs.10,000 initial balance
-        ATM atm = new ATM(myAccount);
+    // Every transaction is journaled here and replayed on the next start
+    private static final String JOURNAL_FILE = "transactions.log";
+
+    public static void main(String[] args) throws IOException {
+        Ledger ledger = Ledger.recover(JOURNAL_FILE, true);
+        // Batch mode: java ATMInterface --batch transactions.csv [report.txt]
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            ATMBatch batch = new ATMBatch(ledger);
+            batch.run(args[1], args.length >= 3 ? args[2] : "batch-report.txt");
+            System.out.println("Applied " + batch.getApplied() + " transactions, rejected " + batch.getRejected() + ".");
+            ledger.close();
+            return;
+        }
+        // You can change the starting balances here; existing accounts keep theirs
+        ledger.open(1001, 10000_00); // Rs.10,000 initial balance
+        ledger.open(1002, 5000_00);  // Second account to transfer to
+        ATM atm = new ATM(ledger, 1001);
         atm.start();
+        ledger.close();
     }
-}
\ No newline at end of file
+}
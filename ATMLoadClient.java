@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+// Load generator for ATMServer.
+// Opens many sessions from one selector thread; each session opens its own
+// account, then loops deposit / balance / withdraw requests and records the
+// latency of every reply. Prints ops/sec and latency percentiles.
+//   java ATMLoadClient [host] [port] [sessions] [seconds]
+public class ATMLoadClient {
+    // Latency histogram in microseconds; the last bucket collects the rest
+    private static final int BUCKETS = 1_000_000;
+
+    private static final String[] REQUESTS = {"DEP %d 10.00\n", "BAL %d\n", "WDR %d 5.50\n"};
+
+    private static final class Session {
+        final long account;
+        final ByteBuffer in = ByteBuffer.allocate(256);
+        ByteBuffer out;
+        long sentAt;
+        int step = -1;
+
+        Session(long account) {
+            this.account = account;
+        }
+
+        // First request opens the account; an ERR reply for an existing one is fine
+        ByteBuffer nextRequest() {
+            String request = step < 0 ? "OPEN " + account + " 1000\n"
+                    : String.format(REQUESTS[step % REQUESTS.length], account);
+            step++;
+            return ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5050;
+        int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        long[] histogram = new long[BUCKETS];
+        long ops = 0;
+        long errors = 0;
+        Selector selector = Selector.open();
+        for (int i = 0; i < sessions; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(new InetSocketAddress(host, port));
+            channel.register(selector, SelectionKey.OP_CONNECT, new Session(1_000_000 + i));
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = 0;
+        long deadline = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Session session = (Session) key.attachment();
+                SocketChannel channel = (SocketChannel) key.channel();
+                try {
+                    if (key.isConnectable()) {
+                        channel.finishConnect();
+                        send(key, session);
+                    } else if (key.isWritable()) {
+                        channel.write(session.out);
+                        if (!session.out.hasRemaining()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    } else if (key.isReadable()) {
+                        if (channel.read(session.in) < 0) {
+                            key.cancel();
+                            continue;
+                        }
+                        int newline = indexOf(session.in, (byte) '\n');
+                        if (newline < 0) {
+                            continue;
+                        }
+                        long now = System.nanoTime();
+                        if (session.step > 0) {
+                            long micros = (now - session.sentAt) / 1000;
+                            histogram[(int) Math.min(micros, BUCKETS - 1)]++;
+                            ops++;
+                            if (session.in.get(0) != 'O') {
+                                errors++;
+                            }
+                            if (measureFrom == 0) {
+                                measureFrom = now;
+                            }
+                        }
+                        session.in.clear();
+                        send(key, session);
+                    }
+                } catch (IOException e) {
+                    key.cancel();
+                    channel.close();
+                }
+            }
+        }
+        long elapsed = Math.max(1, System.nanoTime() - (measureFrom == 0 ? start : measureFrom));
+
+        System.out.printf("Sessions: %d, requests: %,d, errors: %,d%n", sessions, ops, errors);
+        System.out.printf("Throughput: %,d ops/sec%n", ops * 1_000_000_000L / elapsed);
+        System.out.printf("Latency p50: %d us, p99: %d us, max bucket: %d us%n",
+                percentile(histogram, ops, 0.50), percentile(histogram, ops, 0.99), percentile(histogram, ops, 1.0));
+        selector.close();
+    }
+
+    private static void send(SelectionKey key, Session session) throws IOException {
+        session.out = session.nextRequest();
+        session.sentAt = System.nanoTime();
+        ((SocketChannel) key.channel()).write(session.out);
+        key.interestOps(session.out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b) {
+        for (int i = 0; i < buffer.position(); i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long percentile(long[] histogram, long count, double p) {
+        long target = (long) Math.ceil(count * p);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target && seen > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
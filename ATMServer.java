@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+// Network front end for the ledger, serving many ATM terminals at once.
+// One selector thread does all socket I/O; ledger calls (which may wait for
+// the journal to reach disk) run on a worker pool. Each session has at most
+// one request in flight, so replies come back in request order.
+//
+// Line protocol, one request per line:
+//   BAL <account>                     -> OK <balance>
+//   DEP <account> <amount>            -> OK <balance>
+//   WDR <account> <amount>            -> OK <balance>
+//   XFR <from> <to> <amount>          -> OK <balance of from>
+//   OPEN <account> <amount>           -> OK <balance>
+//   QUIT
+// Failures reply "ERR <reason>".
+public class ATMServer {
+    private static final int MAX_LINE = 256;
+    // How long accepting stops after a failed accept, such as running out of
+    // file descriptors, so the selector does not spin on the ready server key
+    private static final long ACCEPT_RETRY_NANOS = 100_000_000;
+
+    private final Ledger ledger;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final SelectionKey serverKey;
+    private long acceptPausedAt = -1;
+    private final ExecutorService workers;
+    private final ConcurrentLinkedQueue<Session> completed = new ConcurrentLinkedQueue<>();
+
+    private static final class Session {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE * 4);
+        ByteBuffer out = ByteBuffer.allocate(0);
+        volatile String reply;
+        boolean busy;
+        boolean closing;
+        SelectionKey key;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public ATMServer(Ledger ledger, int port, int workerThreads) throws IOException {
+        this.ledger = ledger;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 16_384);
+        server.configureBlocking(false);
+        this.serverKey = server.register(selector, SelectionKey.OP_ACCEPT);
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+    }
+
+    public void serve() throws IOException {
+        while (selector.isOpen()) {
+            if (acceptPausedAt < 0) {
+                selector.select();
+            } else {
+                selector.select(ACCEPT_RETRY_NANOS / 1_000_000);
+                if (System.nanoTime() - acceptPausedAt >= ACCEPT_RETRY_NANOS) {
+                    acceptPausedAt = -1;
+                    serverKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+            }
+            Session done;
+            while ((done = completed.poll()) != null) {
+                finishRequest(done);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    try {
+                        accept();
+                    } catch (IOException e) {
+                        // The rest wait in the backlog; the listening socket stays open
+                        System.err.println("Accept failed, retrying shortly: " + e.getMessage());
+                        acceptPausedAt = System.nanoTime();
+                        serverKey.interestOps(0);
+                    }
+                    continue;
+                }
+                Session session = (Session) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        read(session);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(session);
+                    }
+                } catch (IOException e) {
+                    closeQuietly(key);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                Session session = new Session(channel);
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+
+    private void read(Session session) throws IOException {
+        if (session.channel.read(session.in) < 0) {
+            closeQuietly(session.key);
+            return;
+        }
+        dispatch(session);
+    }
+
+    // Hands the next complete line to a worker if none is in flight and
+    // the last reply has gone out; write() calls back here once it has
+    private void dispatch(Session session) {
+        if (session.busy || session.closing || session.out.hasRemaining()) {
+            return;
+        }
+        ByteBuffer in = session.in;
+        int end = -1;
+        for (int i = 0; i < in.position(); i++) {
+            if (in.get(i) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            if (!in.hasRemaining()) {
+                // No newline in a full buffer: not a client we understand
+                closeQuietly(session.key);
+            }
+            return;
+        }
+        String line = new String(in.array(), 0, end, StandardCharsets.US_ASCII).trim();
+        in.flip();
+        in.position(end + 1);
+        in.compact();
+
+        session.busy = true;
+        // Nothing more is read until the reply is written, so a full input
+        // buffer cannot keep the selector waking up for this session
+        session.key.interestOps(0);
+        workers.execute(() -> {
+            String reply;
+            try {
+                reply = handle(line);
+            } catch (RuntimeException e) {
+                reply = "ERR " + e.getClass().getSimpleName();
+            }
+            session.reply = reply;
+            completed.add(session);
+            selector.wakeup();
+        });
+    }
+
+    private void finishRequest(Session session) {
+        session.busy = false;
+        if (!session.key.isValid()) {
+            return;
+        }
+        String reply = session.reply;
+        if (reply == null) {
+            session.closing = true;
+            reply = "BYE";
+        }
+        session.out = ByteBuffer.wrap((reply + "\n").getBytes(StandardCharsets.US_ASCII));
+        try {
+            write(session);
+        } catch (IOException e) {
+            closeQuietly(session.key);
+        }
+    }
+
+    private void write(Session session) throws IOException {
+        session.channel.write(session.out);
+        if (session.out.hasRemaining()) {
+            session.key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        if (session.closing) {
+            closeQuietly(session.key);
+            return;
+        }
+        session.key.interestOps(SelectionKey.OP_READ);
+        // A client may have pipelined several requests
+        dispatch(session);
+    }
+
+    // Runs on a worker thread; returns null for QUIT
+    String handle(String line) {
+        String[] parts = line.split(" +");
+        try {
+            switch (parts[0].toUpperCase(Locale.ROOT)) {
+                case "BAL":
+                    return balance(Long.parseLong(parts[1]));
+                case "DEP":
+                    return reply(ledger.deposit(Long.parseLong(parts[1]), amount(parts[2])), Long.parseLong(parts[1]));
+                case "WDR":
+                    return reply(ledger.withdraw(Long.parseLong(parts[1]), amount(parts[2])), Long.parseLong(parts[1]));
+                case "XFR":
+                    return reply(ledger.transfer(Long.parseLong(parts[1]), Long.parseLong(parts[2]), amount(parts[3])),
+                            Long.parseLong(parts[1]));
+                case "OPEN":
+                    return reply(ledger.open(Long.parseLong(parts[1]), amount(parts[2])), Long.parseLong(parts[1]));
+                case "QUIT":
+                    return null;
+                default:
+                    return "ERR UNKNOWN_COMMAND";
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "ERR BAD_REQUEST";
+        }
+    }
+
+    private String reply(Ledger.Status status, long account) {
+        return status == Ledger.Status.OK ? balance(account) : "ERR " + status;
+    }
+
+    private String balance(long account) {
+        BankAccount a = ledger.get(account);
+        return a == null ? "ERR " + Ledger.Status.NO_ACCOUNT : "OK " + Money.format(a.balancePaise());
+    }
+
+    private static long amount(String text) {
+        long paise = Money.parsePaise(text);
+        if (paise == Money.INVALID) {
+            throw new NumberFormatException(text);
+        }
+        return paise;
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    // java ATMServer [port] [workerThreads]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5050;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+        Ledger ledger = Ledger.recover("transactions.log", true);
+        ATMServer atmServer = new ATMServer(ledger, port, threads);
+        System.out.println("ATM server listening on port " + port + " with " + threads + " workers");
+        atmServer.serve();
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Class to represent a user's bank account
+// The balance is kept in paise and updated with compare-and-set, so several
+// ATM sessions can use the same account without losing updates.
+class BankAccount {
+    private final AtomicLong balance;
+
+    // Constructor to initialize account with a starting balance in paise
+    public BankAccount(long initialPaise) {
+        balance = new AtomicLong(initialPaise);
+    }
+
+    // Check the current balance in paise
+    public long balancePaise() {
+        return balance.get();
+    }
+
+    // Throws ArithmeticException rather than let the balance wrap around
+    public void depositPaise(long paise) {
+        checkAmount(paise);
+        while (true) {
+            long current = balance.get();
+            if (balance.compareAndSet(current, Math.addExact(current, paise))) {
+                return;
+            }
+        }
+    }
+
+    // Atomically checks and withdraws; never takes the balance below zero
+    public boolean tryWithdraw(long paise) {
+        checkAmount(paise);
+        while (true) {
+            long current = balance.get();
+            if (paise > current) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - paise)) {
+                return true;
+            }
+        }
+    }
+
+    // For replaying a journal, which holds changes that were already
+    // checked when they were made; delta may be negative
+    void applyJournaled(long delta) {
+        while (true) {
+            long current = balance.get();
+            if (balance.compareAndSet(current, Math.addExact(current, delta))) {
+                return;
+            }
+        }
+    }
+
+    private static void checkAmount(long paise) {
+        if (paise <= 0) {
+            throw new IllegalArgumentException("Amount must be positive: " + paise);
+        }
+    }
+}
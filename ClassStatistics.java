@@ -0,0 +1,351 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Class-level statistics over graded results.
+// Marks are whole numbers from 0 to 100, so a 101-slot histogram per subject
+// is an exact sketch: mean, standard deviation, median and any percentile
+// come from it, and two histograms merge by adding counts. Totals get a
+// histogram of their own (weighted, when the policy has weights), grades a
+// count per grade of the policy's Lookup, and the top students are kept in a
+// bounded heap. Everything is a single pass and merges, so blocks
+// can be summarised in parallel, or rows fed in one at a time from a file
+// too big for memory.
+class ClassStatistics {
+    private static final int MAX_MARK = 100;
+    private static final int BLOCK = 16_384;
+
+    private final GradingPolicy.Lookup lookup;
+    private final int subjects;
+    private final int topK;
+    private final long[][] markCounts;
+    private final long[] totalCounts;
+    // Indexed by grade code; the last slot counts rows with an invalid mark
+    private final long[] gradeCounts;
+    // Min-heap of (total << 32 | MAX - student): the weakest of the best at the root
+    private final long[] top;
+    private int topSize;
+    private long students;
+
+    public ClassStatistics(GradingPolicy.Lookup lookup, int topK) {
+        this.lookup = lookup;
+        this.subjects = lookup.subjects();
+        this.topK = topK;
+        this.markCounts = new long[subjects][MAX_MARK + 1];
+        this.totalCounts = new long[MAX_MARK * lookup.weightSum() + 1];
+        this.gradeCounts = new long[lookup.gradeCount() + 1];
+        this.top = new long[topK];
+    }
+
+    // Summarises the engine's results, one block of students per task. The
+    // engine grades with the standard policy, so its codes are that Lookup's.
+    public static ClassStatistics of(int[][] marks, GradingEngine.Result result, int topK) {
+        GradingPolicy.Lookup lookup = GradingPolicy.standard().compile(marks.length);
+        int count = result.size();
+        int blocks = (count + BLOCK - 1) / BLOCK;
+        return IntStream.range(0, blocks).parallel()
+                .mapToObj(b -> {
+                    ClassStatistics stats = new ClassStatistics(lookup, topK);
+                    stats.addBlock(marks, result, b * BLOCK, Math.min(count, (b + 1) * BLOCK));
+                    return stats;
+                })
+                .reduce(ClassStatistics::merge)
+                .orElseGet(() -> new ClassStatistics(lookup, topK));
+    }
+
+    private void addBlock(int[][] marks, GradingEngine.Result result, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte grade = result.grades[i];
+            if (grade == GradingEngine.INVALID) {
+                gradeCounts[gradeCounts.length - 1]++;
+                continue;
+            }
+            for (int s = 0; s < subjects; s++) {
+                markCounts[s][marks[s][i]]++;
+            }
+            count(i, result.totals[i], grade);
+        }
+    }
+
+    // Adds one student's marks, for callers streaming rows
+    public void add(int student, int[] marks) {
+        if (marks.length != subjects) {
+            throw new IllegalArgumentException("Expected marks for " + subjects + " subjects, got " + marks.length);
+        }
+        for (int mark : marks) {
+            if (mark < 0 || mark > MAX_MARK) {
+                gradeCounts[gradeCounts.length - 1]++;
+                return;
+            }
+        }
+        for (int s = 0; s < subjects; s++) {
+            markCounts[s][marks[s]]++;
+        }
+        int total = lookup.weightedTotal(marks);
+        count(student, total, lookup.code(total));
+    }
+
+    private void count(int student, int total, byte grade) {
+        totalCounts[total]++;
+        gradeCounts[grade]++;
+        students++;
+        offer(((long) total << 32) | (Integer.MAX_VALUE - student));
+    }
+
+    // Folds the other summary into this one and returns this
+    public ClassStatistics merge(ClassStatistics other) {
+        for (int s = 0; s < subjects; s++) {
+            for (int m = 0; m <= MAX_MARK; m++) {
+                markCounts[s][m] += other.markCounts[s][m];
+            }
+        }
+        for (int t = 0; t < totalCounts.length; t++) {
+            totalCounts[t] += other.totalCounts[t];
+        }
+        for (int g = 0; g < gradeCounts.length; g++) {
+            gradeCounts[g] += other.gradeCounts[g];
+        }
+        for (int i = 0; i < other.topSize; i++) {
+            offer(other.top[i]);
+        }
+        students += other.students;
+        return this;
+    }
+
+    private void offer(long key) {
+        if (topSize < topK) {
+            top[topSize] = key;
+            siftUp(topSize++);
+        } else if (topK > 0 && key > top[0]) {
+            top[0] = key;
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (top[parent] <= top[i]) {
+                return;
+            }
+            swap(parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < topSize && top[left] < top[smallest]) {
+                smallest = left;
+            }
+            if (right < topSize && top[right] < top[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long t = top[a];
+        top[a] = top[b];
+        top[b] = t;
+    }
+
+    // Students with a valid row
+    public long count() {
+        return students;
+    }
+
+    public long invalidCount() {
+        return gradeCounts[gradeCounts.length - 1];
+    }
+
+    public double mean(int subject) {
+        return mean(markCounts[subject]);
+    }
+
+    public double stddev(int subject) {
+        return stddev(markCounts[subject]);
+    }
+
+    public double median(int subject) {
+        return median(markCounts[subject]);
+    }
+
+    // Nearest-rank percentile, p from 0 to 100
+    public int percentile(int subject, double p) {
+        return percentile(markCounts[subject], p);
+    }
+
+    public double meanTotal() {
+        return mean(totalCounts);
+    }
+
+    public double medianTotal() {
+        return median(totalCounts);
+    }
+
+    // Count per grade, by grade code, best first
+    public long[] gradeHistogram() {
+        return Arrays.copyOf(gradeCounts, lookup.gradeCount());
+    }
+
+    // Best students first: {student, total} pairs, ties going to the lower number
+    public int[][] topStudents() {
+        long[] sorted = Arrays.copyOf(top, topSize);
+        Arrays.sort(sorted);
+        int[][] result = new int[topSize][];
+        for (int i = 0; i < topSize; i++) {
+            long key = sorted[topSize - 1 - i];
+            result[i] = new int[]{Integer.MAX_VALUE - (int) key, (int) (key >>> 32)};
+        }
+        return result;
+    }
+
+    private static double mean(long[] counts) {
+        long n = 0;
+        long sum = 0;
+        for (int v = 0; v < counts.length; v++) {
+            n += counts[v];
+            sum += counts[v] * v;
+        }
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    // Population standard deviation
+    private static double stddev(long[] counts) {
+        double mean = mean(counts);
+        long n = 0;
+        double squares = 0;
+        for (int v = 0; v < counts.length; v++) {
+            n += counts[v];
+            squares += counts[v] * (v - mean) * (v - mean);
+        }
+        return n == 0 ? 0 : Math.sqrt(squares / n);
+    }
+
+    // Middle value, or the mean of the two middle values
+    private static double median(long[] counts) {
+        long n = Arrays.stream(counts).sum();
+        if (n == 0) {
+            return 0;
+        }
+        return (valueAtRank(counts, (n + 1) / 2) + valueAtRank(counts, n / 2 + 1)) / 2.0;
+    }
+
+    private static int percentile(long[] counts, double p) {
+        long n = Arrays.stream(counts).sum();
+        return n == 0 ? 0 : valueAtRank(counts, Math.max(1, (long) Math.ceil(p / 100 * n)));
+    }
+
+    // Value of the rank-th smallest entry, counting from 1
+    private static int valueAtRank(long[] counts, long rank) {
+        long seen = 0;
+        for (int v = 0; v < counts.length; v++) {
+            seen += counts[v];
+            if (seen >= rank) {
+                return v;
+            }
+        }
+        return counts.length - 1;
+    }
+
+    // Readable summary for a console or a results area
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Students: %d (%d with invalid marks)%n", students, invalidCount()));
+        for (int s = 0; s < subjects; s++) {
+            sb.append(String.format("Subject %d: mean %.2f, sd %.2f, min %d, p25 %d, median %.1f, p75 %d, p90 %d, max %d%n",
+                    s + 1, mean(s), stddev(s), percentile(s, 0), percentile(s, 25), median(s),
+                    percentile(s, 75), percentile(s, 90), percentile(s, 100)));
+        }
+        sb.append(String.format("Total: mean %.2f, median %.1f%n", meanTotal(), medianTotal()));
+        sb.append("Grades:");
+        for (int g = 0; g < lookup.gradeCount(); g++) {
+            sb.append(String.format(" %s %d (%.1f%%)", lookup.gradeName((byte) g), gradeCounts[g],
+                    students == 0 ? 0 : 100.0 * gradeCounts[g] / students));
+        }
+        sb.append(String.format("%nTop %d:", topSize));
+        for (int[] entry : topStudents()) {
+            sb.append(" #").append(entry[0] + 1).append(" (").append(entry[1]).append(')');
+        }
+        return sb.append(System.lineSeparator()).toString();
+    }
+
+    // Compares one streaming pass with sorting every column:
+    //   java ClassStatistics [students] [subjects] [topK]
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int subjects = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        SplittableRandom random = new SplittableRandom(7);
+        int[][] marks = new int[subjects][count];
+        for (int s = 0; s < subjects; s++) {
+            for (int i = 0; i < count; i++) {
+                // Roughly bell-shaped around 50
+                marks[s][i] = Math.min(100, (random.nextInt(61) + random.nextInt(61) + random.nextInt(31)) * 100 / 150);
+            }
+        }
+        GradingEngine.Result result = GradingEngine.grade(marks);
+
+        long sketchNanos = Long.MAX_VALUE;
+        long sortNanos = Long.MAX_VALUE;
+        ClassStatistics stats = null;
+        double[] naive = null;
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            stats = of(marks, result, k);
+            long t1 = System.nanoTime();
+            naive = sortBased(marks, result, k);
+            long t2 = System.nanoTime();
+            sketchNanos = Math.min(sketchNanos, t1 - t0);
+            sortNanos = Math.min(sortNanos, t2 - t1);
+        }
+
+        // The sort-based numbers: per subject mean, median, p90, then the best total
+        boolean same = stats.topStudents()[0][1] == (int) naive[naive.length - 1];
+        for (int s = 0; s < subjects; s++) {
+            same &= Math.abs(stats.mean(s) - naive[s * 3]) < 1e-9
+                    && stats.median(s) == naive[s * 3 + 1]
+                    && stats.percentile(s, 90) == naive[s * 3 + 2];
+        }
+        System.out.print(stats.report());
+        System.out.printf("Students: %,d x %d subjects, %d cores%n", count, subjects,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("Sketches:   %,d ms%n", sketchNanos / 1_000_000);
+        System.out.printf("Sort-based: %,d ms%n", sortNanos / 1_000_000);
+        System.out.println(same ? "PASS" : "FAIL: results differ");
+    }
+
+    // The obvious way: copy and sort every column, then sort students by total
+    private static double[] sortBased(int[][] marks, GradingEngine.Result result, int k) {
+        int subjects = marks.length;
+        double[] out = new double[subjects * 3 + 1];
+        for (int s = 0; s < subjects; s++) {
+            int[] sorted = marks[s].clone();
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (int m : sorted) {
+                sum += m;
+            }
+            int n = sorted.length;
+            out[s * 3] = (double) sum / n;
+            out[s * 3 + 1] = (sorted[(n - 1) / 2] + sorted[n / 2]) / 2.0;
+            out[s * 3 + 2] = sorted[(int) Math.ceil(0.9 * n) - 1];
+        }
+        Integer[] order = new Integer[result.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(result.totals[b], result.totals[a]));
+        out[subjects * 3] = result.totals[order[0]];
+        return out;
+    }
+}
@@ -0,0 +1,54 @@
+import javax.swing.SwingUtilities;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+// Measures how responsive the Swing event dispatch thread is.
+// A background thread posts a tiny task to the EDT at a fixed rate and
+// records how long it waited before running; a long wait means something
+// on the EDT was blocking it.
+class EdtLatencyProbe {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "edt-latency-probe");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+    private long stallThresholdNanos = Long.MAX_VALUE;
+    private LongConsumer stallListener = millis -> { };
+
+    // Hook called on the EDT with the stall length whenever one sample takes
+    // longer than the threshold
+    public void setStallListener(long thresholdMillis, LongConsumer listener) {
+        stallThresholdNanos = thresholdMillis * 1_000_000;
+        stallListener = listener;
+    }
+
+    public void start(long periodMillis) {
+        scheduler.scheduleAtFixedRate(() -> {
+            long posted = System.nanoTime();
+            SwingUtilities.invokeLater(() -> record(System.nanoTime() - posted));
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Only called on the EDT, so plain read-modify-write is safe
+    private void record(long nanos) {
+        lastNanos = nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        if (nanos > stallThresholdNanos) {
+            stallListener.accept(nanos / 1_000_000);
+        }
+    }
+
+    public long getLastMillis() {
+        return lastNanos / 1_000_000;
+    }
+
+    public long getMaxMillis() {
+        return maxNanos / 1_000_000;
+    }
+}
@@ -0,0 +1,420 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+// The grade calculator without the window: mark checking and grading for
+// one student, and a streaming mode that grades a whole CSV export.
+//
+//   java GradeCalculator [--policy name] marks.csv [results.csv]
+//
+// Each input row is "roll,mark1,mark2,...". The first row is skipped as a
+// header if its roll column says "roll" or none of its fields is a number.
+// Each output row is "roll,total,average,grade,error"; a rejected row has
+// only the roll and the error filled in. The file is read and written
+// through fixed byte buffers and marks are parsed straight from the bytes,
+// so memory stays the same however big the file is.
+class GradeCalculator {
+    // parseMark() results for bad input
+    static final int NOT_A_NUMBER = -1;
+    static final int OUT_OF_RANGE = -2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] HEADER = "roll,total,average,grade,error\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final GradingPolicy.Lookup lookup;
+
+    public GradeCalculator(GradingPolicy.Lookup lookup) {
+        this.lookup = lookup;
+    }
+
+    public int subjects() {
+        return lookup.subjects();
+    }
+
+    static final class Result {
+        final int total;
+        final double average;
+        final String grade;
+        final boolean passed;
+
+        Result(int total, double average, String grade, boolean passed) {
+            this.total = total;
+            this.average = average;
+            this.grade = grade;
+            this.passed = passed;
+        }
+    }
+
+    // Same rules as the calculator's text fields: a whole number from 0 to 100.
+    // Throws NumberFormatException if it is not a number at all.
+    public static int parseMark(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        int mark = parseMark(bytes, 0, bytes.length);
+        if (mark == NOT_A_NUMBER) {
+            throw new NumberFormatException("Not a number: " + text);
+        }
+        if (mark == OUT_OF_RANGE) {
+            throw new IllegalArgumentException("Marks should be between 0 and 100: " + text);
+        }
+        return mark;
+    }
+
+    // Parses bytes from..to as a mark, ignoring surrounding spaces. Returns
+    // NOT_A_NUMBER or OUT_OF_RANGE instead of throwing, since a bad row in
+    // a big file is normal.
+    static int parseMark(byte[] b, int from, int to) {
+        while (from < to && b[from] == ' ') {
+            from++;
+        }
+        while (to > from && b[to - 1] == ' ') {
+            to--;
+        }
+        boolean negative = false;
+        if (from < to && (b[from] == '-' || b[from] == '+')) {
+            negative = b[from] == '-';
+            from++;
+        }
+        if (from == to) {
+            return NOT_A_NUMBER;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_A_NUMBER;
+            }
+            // Stop counting once it is out of range, so long numbers cannot overflow
+            if (value <= 100) {
+                value = value * 10 + digit;
+            }
+        }
+        return negative && value != 0 || value > 100 ? OUT_OF_RANGE : value;
+    }
+
+    // Grades one student; every mark must be from 0 to 100
+    public Result calculate(int[] marks) {
+        if (marks.length != lookup.subjects()) {
+            throw new IllegalArgumentException("Expected " + lookup.subjects() + " marks");
+        }
+        int total = 0;
+        for (int mark : marks) {
+            if (mark < 0 || mark > 100) {
+                throw new IllegalArgumentException("Marks should be between 0 and 100");
+            }
+            total += mark;
+        }
+        return calculate(total, lookup.weightedTotal(marks));
+    }
+
+    // Grades from totals the caller has kept up to date itself
+    public Result calculate(int total, int weightedTotal) {
+        String grade = lookup.gradeOf(weightedTotal);
+        return new Result(total, lookup.average(weightedTotal), grade, !grade.equals(lookup.lowestGrade()));
+    }
+
+    // Grades every row of in into out and returns {graded, rejected}
+    public long[] gradeCsv(InputStream in, OutputStream out) throws IOException {
+        CsvGrader grader = new CsvGrader(in, out);
+        grader.run();
+        return new long[]{grader.graded, grader.rejected};
+    }
+
+    // One pass over the input; a line is handled in place in the read
+    // buffer and written to the output buffer byte by byte
+    private final class CsvGrader {
+        private final InputStream in;
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final byte[] output = new byte[BUFFER_SIZE];
+        private final int[] marks = new int[lookup.subjects()];
+        private final byte[][] gradeNames;
+        private int outputSize;
+        private long line;
+        long graded;
+        long rejected;
+
+        CsvGrader(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+            gradeNames = new byte[128][];
+        }
+
+        void run() throws IOException {
+            write(HEADER, 0, HEADER.length);
+            int start = 0;
+            int end = 0;
+            int scan = 0;
+            boolean skipping = false;
+            while (true) {
+                int newline = -1;
+                for (int i = scan; i < end; i++) {
+                    if (buffer[i] == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    if (!skipping) {
+                        line(start, newline);
+                    }
+                    skipping = false;
+                    start = newline + 1;
+                    scan = start;
+                    continue;
+                }
+                // No full line left: move the partial one to the front and read more
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                if (end == buffer.length) {
+                    // A line longer than the buffer; report it and drop the rest of it
+                    if (!skipping) {
+                        line++;
+                        reject(0, 0, "Line " + line + " is too long");
+                    }
+                    skipping = true;
+                    end = 0;
+                }
+                scan = end;
+                int n = in.read(buffer, end, buffer.length - end);
+                if (n < 0) {
+                    if (end > 0 && !skipping) {
+                        line(0, end);
+                    }
+                    break;
+                }
+                end += n;
+            }
+            out.write(output, 0, outputSize);
+            out.flush();
+        }
+
+        private void line(int from, int to) throws IOException {
+            line++;
+            if (to > from && buffer[to - 1] == '\r') {
+                to--;
+            }
+            if (to == from) {
+                return;
+            }
+            // The roll may be quoted; it is copied to the output as it is
+            int rollEnd = from;
+            boolean quoted = false;
+            while (rollEnd < to && (quoted || buffer[rollEnd] != ',')) {
+                if (buffer[rollEnd] == '"') {
+                    quoted = !quoted;
+                }
+                rollEnd++;
+            }
+            if (line == 1 && isHeader(from, rollEnd, to)) {
+                return;
+            }
+
+            int subject = 0;
+            int field = rollEnd + 1;
+            String error = null;
+            while (field <= to && error == null) {
+                int fieldEnd = field;
+                while (fieldEnd < to && buffer[fieldEnd] != ',') {
+                    fieldEnd++;
+                }
+                if (subject == marks.length) {
+                    error = "Expected " + marks.length + " marks";
+                    break;
+                }
+                int mark = parseMark(buffer, field, fieldEnd);
+                if (mark == NOT_A_NUMBER) {
+                    error = "Subject " + (subject + 1) + " is not a number";
+                } else if (mark == OUT_OF_RANGE) {
+                    error = "Subject " + (subject + 1) + " should be between 0 and 100";
+                }
+                marks[subject++] = mark;
+                field = fieldEnd + 1;
+            }
+            if (error == null && subject != marks.length) {
+                error = "Expected " + marks.length + " marks";
+            }
+            if (error != null) {
+                reject(from, rollEnd, error);
+                return;
+            }
+
+            int total = 0;
+            for (int mark : marks) {
+                total += mark;
+            }
+            int weightedTotal = lookup.weightedTotal(marks);
+            write(buffer, from, rollEnd - from);
+            writeByte(',');
+            writeInt(total);
+            writeByte(',');
+            writeAverage(weightedTotal);
+            writeByte(',');
+            byte[] grade = gradeName(lookup.code(weightedTotal));
+            write(grade, 0, grade.length);
+            writeByte(',');
+            writeByte('\n');
+            graded++;
+        }
+
+        // Column names rather than a student: the roll column is headed
+        // "roll", or neither the roll nor any mark is a number. A row with
+        // one bad mark among good ones is still a row.
+        private boolean isHeader(int from, int rollEnd, int to) {
+            if (isRollHeading(new String(buffer, from, rollEnd - from, StandardCharsets.ISO_8859_1))) {
+                return true;
+            }
+            if (parseMark(buffer, from, rollEnd) != NOT_A_NUMBER) {
+                return false;
+            }
+            int field = rollEnd + 1;
+            while (field <= to) {
+                int fieldEnd = field;
+                while (fieldEnd < to && buffer[fieldEnd] != ',') {
+                    fieldEnd++;
+                }
+                if (parseMark(buffer, field, fieldEnd) != NOT_A_NUMBER) {
+                    return false;
+                }
+                field = fieldEnd + 1;
+            }
+            return true;
+        }
+
+        private byte[] gradeName(byte code) {
+            if (gradeNames[code] == null) {
+                gradeNames[code] = lookup.gradeName(code).getBytes(StandardCharsets.UTF_8);
+            }
+            return gradeNames[code];
+        }
+
+        private void reject(int rollFrom, int rollTo, String error) throws IOException {
+            rejected++;
+            write(buffer, rollFrom, rollTo - rollFrom);
+            write(",,,,".getBytes(StandardCharsets.US_ASCII), 0, 4);
+            byte[] text = error.getBytes(StandardCharsets.US_ASCII);
+            write(text, 0, text.length);
+            writeByte('\n');
+        }
+
+        // weightedTotal / weight sum rounded half up to two decimals
+        private void writeAverage(int weightedTotal) throws IOException {
+            long divisor = lookup.weightSum();
+            long hundredths = ((long) weightedTotal * 200 + divisor) / (2 * divisor);
+            writeInt(hundredths / 100);
+            writeByte('.');
+            writeByte('0' + (int) (hundredths / 10 % 10));
+            writeByte('0' + (int) (hundredths % 10));
+        }
+
+        private void writeInt(long value) throws IOException {
+            if (value >= 10) {
+                writeInt(value / 10);
+            }
+            writeByte('0' + (int) (value % 10));
+        }
+
+        private void writeByte(int b) throws IOException {
+            if (outputSize == output.length) {
+                out.write(output, 0, outputSize);
+                outputSize = 0;
+            }
+            output[outputSize++] = (byte) b;
+        }
+
+        private void write(byte[] b, int from, int length) throws IOException {
+            if (outputSize + length > output.length) {
+                out.write(output, 0, outputSize);
+                outputSize = 0;
+                if (length > output.length) {
+                    out.write(b, from, length);
+                    return;
+                }
+            }
+            System.arraycopy(b, from, output, outputSize, length);
+            outputSize += length;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        GradingPolicy policy = GradingPolicy.standard();
+        int arg = 0;
+        if (args.length > 1 && args[0].equals("--policy")) {
+            Map<String, GradingPolicy> policies = GradingPolicy.load("grading.properties");
+            policy = policies.get(args[1]);
+            if (policy == null) {
+                System.err.println("No grading policy named " + args[1]);
+                System.exit(1);
+            }
+            arg = 2;
+        }
+        if (args.length <= arg) {
+            System.err.println("Usage: java GradeCalculator [--policy name] marks.csv [results.csv]");
+            System.exit(1);
+        }
+        String input = args[arg];
+        int subjects = policy.subjects() > 0 ? policy.subjects() : countSubjects(input);
+        if (subjects <= 0) {
+            System.err.println("No marks found in " + input);
+            System.exit(1);
+        }
+        GradeCalculator calculator = new GradeCalculator(policy.compile(subjects));
+
+        long start = System.nanoTime();
+        long[] counts;
+        try (InputStream in = new FileInputStream(input);
+             OutputStream out = args.length > arg + 1 ? new FileOutputStream(args[arg + 1])
+                     : new FileOutputStream(FileDescriptor.out)) {
+            counts = calculator.gradeCsv(in, out);
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        long rows = counts[0] + counts[1];
+        System.err.println("Graded: " + counts[0] + ", rejected: " + counts[1] + ", in " + elapsed / 1_000_000
+                + " ms (" + rows * 1_000_000_000L / elapsed + " rows/sec)");
+    }
+
+    // Marks per row: the commas after the roll on the first line, or on the
+    // second if the first is a header
+    private static int countSubjects(String fileName) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(fileName), StandardCharsets.UTF_8))) {
+            for (int n = 1; n <= 2; n++) {
+                String line = in.readLine();
+                if (line == null) {
+                    return 0;
+                }
+                int commas = 0;
+                int firstComma = -1;
+                boolean quoted = false;
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (c == '"') {
+                        quoted = !quoted;
+                    } else if (c == ',' && !quoted) {
+                        if (commas++ == 0) {
+                            firstComma = i;
+                        }
+                    }
+                }
+                if (n == 1 && commas > 0 && (isRollHeading(line.substring(0, firstComma))
+                        || !isNumber(line.substring(0, firstComma))
+                        && Arrays.stream(line.substring(firstComma + 1).split(",", -1)).noneMatch(GradeCalculator::isNumber))) {
+                    continue;
+                }
+                return commas;
+            }
+            return 0;
+        }
+    }
+
+    private static boolean isRollHeading(String field) {
+        return field.replace("\"", "").trim().equalsIgnoreCase("roll");
+    }
+
+    // A mark, or at least a number, as parseMark sees it
+    private static boolean isNumber(String field) {
+        return parseMark(field.getBytes(StandardCharsets.ISO_8859_1), 0, field.length()) != NOT_A_NUMBER;
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+// Headless grading for many students at once.
+// Marks are held column by column, marks[subject][student], and graded by
+// the compiled standard policy (GradingPolicy.Lookup.classify), which builds
+// totals one subject at a time over blocks of students spread over the
+// common fork-join pool. Grades use the calculator's bands:
+// A+ >= 90, A >= 80, B >= 70, C >= 60, D >= 50, otherwise F.
+class GradingEngine {
+    static final String[] GRADES = {"A+", "A", "B", "C", "D", "F"};
+    static final int[] BANDS = {90, 80, 70, 60, 50};
+    // Grade code for a student with a mark outside 0..100
+    static final byte INVALID = -1;
+
+    static final class Result {
+        final int subjects;
+        final int[] totals;
+        final byte[] grades;
+
+        Result(int subjects, int[] totals, byte[] grades) {
+            this.subjects = subjects;
+            this.totals = totals;
+            this.grades = grades;
+        }
+
+        public int size() {
+            return totals.length;
+        }
+
+        public int total(int student) {
+            return totals[student];
+        }
+
+        public double average(int student) {
+            return (double) totals[student] / subjects;
+        }
+
+        // Null for a student with an invalid mark
+        public String grade(int student) {
+            return grades[student] == INVALID ? null : GRADES[grades[student]];
+        }
+    }
+
+    // Grades every student; all columns must be the same length
+    public static Result grade(int[][] marks) {
+        int subjects = marks.length;
+        if (subjects == 0) {
+            throw new IllegalArgumentException("No subjects");
+        }
+        int students = marks[0].length;
+        for (int[] column : marks) {
+            if (column.length != students) {
+                throw new IllegalArgumentException("Every subject needs a mark for every student");
+            }
+        }
+        // Every weight is 1, so the weighted totals are the plain totals and
+        // the standard grade codes index GRADES
+        int[] totals = new int[students];
+        byte[] grades = GradingPolicy.standard().compile(subjects).classify(marks, totals);
+        return new Result(subjects, totals, grades);
+    }
+
+    // Writes "student,total,average,grade" lines through one reused buffer;
+    // average has two decimals, grade is blank for an invalid row
+    public static void writeCsv(Result result, Writer out) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        char[] chars = new char[64];
+        out.write("student,total,average,grade\n");
+        for (int i = 0; i < result.size(); i++) {
+            line.setLength(0);
+            int total = result.totals[i];
+            line.append(i + 1).append(',').append(total).append(',');
+            appendAverage(line, total, result.subjects);
+            line.append(',');
+            if (result.grades[i] != INVALID) {
+                line.append(GRADES[result.grades[i]]);
+            }
+            line.append('\n');
+            line.getChars(0, line.length(), chars, 0);
+            out.write(chars, 0, line.length());
+        }
+        out.flush();
+    }
+
+    // total / subjects rounded half up to two decimals, in integer arithmetic
+    static void appendAverage(StringBuilder out, int total, int subjects) {
+        long hundredths = ((long) total * 200 + subjects) / (2L * subjects);
+        if (hundredths < 0) {
+            out.append('-');
+            hundredths = -hundredths;
+        }
+        long fraction = hundredths % 100;
+        out.append(hundredths / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    // Compares the engine with the calculator's one-student-at-a-time loop:
+    //   java GradingEngine [students] [subjects]
+    public static void main(String[] args) throws IOException {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int subjects = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        // Same marks in the row-per-student layout the loop reads, and in columns
+        SplittableRandom random = new SplittableRandom(42);
+        int[] rows = new int[students * subjects];
+        int[][] columns = new int[subjects][students];
+        for (int i = 0; i < students; i++) {
+            for (int s = 0; s < subjects; s++) {
+                int mark = random.nextInt(101);
+                rows[i * subjects + s] = mark;
+                columns[s][i] = mark;
+            }
+        }
+
+        String[] loopGrades = new String[students];
+        long loopNanos = Long.MAX_VALUE;
+        long engineNanos = Long.MAX_VALUE;
+        Result result = null;
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < students; i++) {
+                int total = 0;
+                for (int s = 0; s < subjects; s++) {
+                    total += rows[i * subjects + s];
+                }
+                double average = (double) total / subjects;
+                loopGrades[i] = loopGrade(average);
+            }
+            long t1 = System.nanoTime();
+            result = grade(columns);
+            long t2 = System.nanoTime();
+            loopNanos = Math.min(loopNanos, t1 - t0);
+            engineNanos = Math.min(engineNanos, t2 - t1);
+        }
+
+        int mismatches = 0;
+        for (int i = 0; i < students; i++) {
+            if (!loopGrades[i].equals(result.grade(i))) {
+                mismatches++;
+            }
+        }
+
+        File out = File.createTempFile("grades", ".csv");
+        long t3 = System.nanoTime();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(out), StandardCharsets.UTF_8), 1 << 16)) {
+            writeCsv(result, writer);
+        }
+        long writeNanos = System.nanoTime() - t3;
+        long size = out.length();
+        out.delete();
+
+        System.out.printf("Students: %,d x %d subjects, %d cores%n",
+                students, subjects, Runtime.getRuntime().availableProcessors());
+        System.out.printf("Per-student loop: %,d ms%n", loopNanos / 1_000_000);
+        System.out.printf("Engine:           %,d ms%n", engineNanos / 1_000_000);
+        System.out.printf("Streamed CSV:     %,d ms, %,d bytes (%,d rows/sec)%n",
+                writeNanos / 1_000_000, size, students * 1_000_000_000L / writeNanos);
+        System.out.println(mismatches == 0 ? "PASS" : "FAIL: " + mismatches + " grades differ");
+    }
+
+    // The calculator's original ladder, kept here as the baseline
+    private static String loopGrade(double average) {
+        if (average >= 90) return "A+";
+        else if (average >= 80) return "A";
+        else if (average >= 70) return "B";
+        else if (average >= 60) return "C";
+        else if (average >= 50) return "D";
+        else return "F";
+    }
+}
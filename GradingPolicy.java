@@ -0,0 +1,366 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.IntStream;
+
+// A grading scheme: named grades with the lowest average each one needs,
+// optional whole-number weights per subject, and an optional curve added to
+// every average. Schemes are read from a properties file:
+//
+//   science.bands = A+:90, A:80, B:70, C:60, D:50, F:0
+//   science.weights = 3, 3, 2, 2
+//   science.curve = 2.5
+//
+// compile() turns a scheme into a Lookup: a table with one grade for every
+// possible weighted total, so grading a student is one array read, with no
+// division and no comparisons.
+class GradingPolicy {
+    // Biggest weight sum allowed; the table has 100 entries per unit of weight
+    private static final int MAX_WEIGHT_SUM = 100_000;
+    private static final int BLOCK = 16_384;
+
+    private final String name;
+    // Best grade first, thresholds falling to 0
+    private final String[] grades;
+    private final BigDecimal[] thresholds;
+    // Null means every subject counts the same
+    private final int[] weights;
+    private final BigDecimal curve;
+
+    GradingPolicy(String name, String[] grades, BigDecimal[] thresholds, int[] weights, BigDecimal curve) {
+        for (int k = 1; k < thresholds.length; k++) {
+            if (thresholds[k].compareTo(thresholds[k - 1]) >= 0) {
+                throw new IllegalArgumentException(name + ": thresholds must fall from best grade to worst");
+            }
+        }
+        if (thresholds.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException(name + ": too many grades");
+        }
+        if (thresholds.length == 0 || thresholds[thresholds.length - 1].signum() != 0) {
+            throw new IllegalArgumentException(name + ": the lowest grade must start at 0");
+        }
+        if (weights != null) {
+            long sum = 0;
+            for (int w : weights) {
+                if (w <= 0) {
+                    throw new IllegalArgumentException(name + ": weights must be whole numbers above 0");
+                }
+                sum += w;
+            }
+            if (sum > MAX_WEIGHT_SUM) {
+                throw new IllegalArgumentException(name + ": weights add up to more than " + MAX_WEIGHT_SUM);
+            }
+        }
+        this.name = name;
+        this.grades = grades;
+        this.thresholds = thresholds;
+        this.weights = weights;
+        this.curve = curve;
+    }
+
+    // The calculator's bands: A+ >= 90, A >= 80, B >= 70, C >= 60, D >= 50, otherwise F
+    public static GradingPolicy standard() {
+        BigDecimal[] thresholds = new BigDecimal[GradingEngine.GRADES.length];
+        for (int k = 0; k < thresholds.length; k++) {
+            thresholds[k] = BigDecimal.valueOf(k < GradingEngine.BANDS.length ? GradingEngine.BANDS[k] : 0);
+        }
+        return new GradingPolicy("standard", GradingEngine.GRADES, thresholds, null, BigDecimal.ZERO);
+    }
+
+    // Every scheme in the file, sorted by name
+    public static Map<String, GradingPolicy> load(String fileName) throws IOException {
+        Properties props = new Properties();
+        try (Reader in = new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8)) {
+            props.load(in);
+        }
+        Set<String> names = new TreeSet<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.endsWith(".bands")) {
+                names.add(key.substring(0, key.length() - ".bands".length()));
+            }
+        }
+        Map<String, GradingPolicy> policies = new LinkedHashMap<>();
+        for (String name : names) {
+            try {
+                policies.put(name, parse(name, props));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(fileName + ": " + e.getMessage());
+            }
+        }
+        return policies;
+    }
+
+    private static GradingPolicy parse(String name, Properties props) {
+        String[] bands = props.getProperty(name + ".bands").split(",");
+        String[] grades = new String[bands.length];
+        BigDecimal[] thresholds = new BigDecimal[bands.length];
+        for (int k = 0; k < bands.length; k++) {
+            int colon = bands[k].lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException(name + ".bands: expected grade:threshold, got \"" + bands[k].trim() + "\"");
+            }
+            grades[k] = bands[k].substring(0, colon).trim();
+            thresholds[k] = number(name + ".bands", bands[k].substring(colon + 1));
+        }
+
+        int[] weights = null;
+        String weightList = props.getProperty(name + ".weights");
+        if (weightList != null && !weightList.isBlank()) {
+            String[] parts = weightList.split(",");
+            weights = new int[parts.length];
+            for (int s = 0; s < parts.length; s++) {
+                try {
+                    weights[s] = Integer.parseInt(parts[s].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(name + ".weights: \"" + parts[s].trim() + "\" is not a whole number");
+                }
+            }
+        }
+
+        String curve = props.getProperty(name + ".curve");
+        return new GradingPolicy(name, grades, thresholds, weights,
+                curve == null || curve.isBlank() ? BigDecimal.ZERO : number(name + ".curve", curve));
+    }
+
+    private static BigDecimal number(String key, String text) {
+        try {
+            return new BigDecimal(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + ": \"" + text.trim() + "\" is not a number");
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Subjects the weights are for, or 0 if any number of subjects will do
+    public int subjects() {
+        return weights == null ? 0 : weights.length;
+    }
+
+    // Builds the lookup table for this many subjects
+    public Lookup compile(int subjects) {
+        // No subjects means a weight sum of 0, and every average would divide by it
+        if (subjects <= 0) {
+            throw new IllegalArgumentException(name + " needs at least one subject, not " + subjects);
+        }
+        if (weights != null && weights.length != subjects) {
+            throw new IllegalArgumentException(name + " has weights for " + weights.length
+                    + " subjects, not " + subjects);
+        }
+        int[] w = weights != null ? weights.clone() : new int[subjects];
+        if (weights == null) {
+            Arrays.fill(w, 1);
+        }
+        int weightSum = Arrays.stream(w).sum();
+        int maxTotal = 100 * weightSum;
+
+        // The average reaches a threshold once the weighted total reaches
+        // (threshold - curve) * weightSum; worked out exactly, then rounded up
+        byte[] table = new byte[maxTotal + 1];
+        int filled = maxTotal + 1;
+        for (int k = 0; k < thresholds.length; k++) {
+            BigDecimal limit = thresholds[k].subtract(curve).multiply(BigDecimal.valueOf(weightSum))
+                    .setScale(0, RoundingMode.CEILING);
+            int from = limit.max(BigDecimal.ZERO).min(BigDecimal.valueOf(filled)).intValue();
+            if (k == thresholds.length - 1) {
+                from = 0;
+            }
+            Arrays.fill(table, from, filled, (byte) k);
+            filled = from;
+        }
+        return new Lookup(grades, w, weightSum, table);
+    }
+
+    // A compiled scheme for a fixed number of subjects
+    static final class Lookup {
+        private final String[] grades;
+        private final int[] weights;
+        private final int weightSum;
+        private final byte[] table;
+
+        private Lookup(String[] grades, int[] weights, int weightSum, byte[] table) {
+            this.grades = grades;
+            this.weights = weights;
+            this.weightSum = weightSum;
+            this.table = table;
+        }
+
+        public int subjects() {
+            return weights.length;
+        }
+
+        public int weight(int subject) {
+            return weights[subject];
+        }
+
+        public int weightSum() {
+            return weightSum;
+        }
+
+        public String gradeName(byte code) {
+            return grades[code];
+        }
+
+        // Grade codes run from 0, the best, to gradeCount() - 1
+        public int gradeCount() {
+            return grades.length;
+        }
+
+        // The grade below every threshold, which counts as a fail
+        public String lowestGrade() {
+            return grades[grades.length - 1];
+        }
+
+        // Marks must already be between 0 and 100
+        public int weightedTotal(int[] marks) {
+            int total = 0;
+            for (int s = 0; s < weights.length; s++) {
+                total += weights[s] * marks[s];
+            }
+            return total;
+        }
+
+        public double average(int weightedTotal) {
+            return (double) weightedTotal / weightSum;
+        }
+
+        public String gradeOf(int weightedTotal) {
+            return grades[table[weightedTotal]];
+        }
+
+        // Grade code for gradeName(), for callers that print many grades
+        public byte code(int weightedTotal) {
+            return table[weightedTotal];
+        }
+
+        public String grade(int[] marks) {
+            return gradeOf(weightedTotal(marks));
+        }
+
+        // Grade codes (see gradeName) for marks[subject][student], or
+        // GradingEngine.INVALID where a mark is outside 0..100
+        public byte[] classify(int[][] marks) {
+            return classify(marks, null);
+        }
+
+        // Same, also filling in each student's weighted total when totals is
+        // not null; a total is meaningless where the code is INVALID
+        byte[] classify(int[][] marks, int[] totals) {
+            if (marks.length != weights.length) {
+                throw new IllegalArgumentException("Expected marks for " + weights.length + " subjects");
+            }
+            int students = marks.length == 0 ? 0 : marks[0].length;
+            byte[] codes = new byte[students];
+            int blocks = (students + BLOCK - 1) / BLOCK;
+            IntStream.range(0, blocks).parallel().forEach(b -> {
+                int from = b * BLOCK;
+                int to = Math.min(students, from + BLOCK);
+                classifyBlock(marks, from, to, totals, codes);
+            });
+            return codes;
+        }
+
+        private void classifyBlock(int[][] marks, int from, int to, int[] allTotals, byte[] codes) {
+            // The caller's totals, or a scratch block of them
+            int[] totals = allTotals != null ? allTotals : new int[to - from];
+            int base = allTotals != null ? 0 : from;
+            // Sign bit ends up set if any mark in the block is below 0 or above 100
+            int bad = 0;
+            for (int s = 0; s < weights.length; s++) {
+                int[] column = marks[s];
+                int w = weights[s];
+                for (int i = from; i < to; i++) {
+                    totals[i - base] += w * column[i];
+                }
+                for (int i = from; i < to; i++) {
+                    bad |= column[i] | (100 - column[i]);
+                }
+            }
+            if (bad >= 0) {
+                for (int i = from; i < to; i++) {
+                    codes[i] = table[totals[i - base]];
+                }
+                return;
+            }
+            // Rare slow path: a bad mark would index outside the table
+            for (int i = from; i < to; i++) {
+                boolean valid = true;
+                for (int[] column : marks) {
+                    valid &= column[i] >= 0 && column[i] <= 100;
+                }
+                codes[i] = valid ? table[totals[i - base]] : GradingEngine.INVALID;
+            }
+        }
+    }
+
+    // Compares the compiled table with walking the thresholds per student:
+    //   java GradingPolicy [students] [policies file] [policy]
+    public static void main(String[] args) throws IOException {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        GradingPolicy policy = args.length > 2 ? load(args[1]).get(args[2])
+                : new GradingPolicy("weighted", GradingEngine.GRADES,
+                        new BigDecimal[]{new BigDecimal("89.5"), BigDecimal.valueOf(80), BigDecimal.valueOf(70),
+                                BigDecimal.valueOf(60), BigDecimal.valueOf(50), BigDecimal.ZERO},
+                        new int[]{3, 3, 2, 2, 1, 1, 1, 1, 1, 1}, new BigDecimal("2.5"));
+        if (policy == null) {
+            System.out.println("No policy named " + args[2]);
+            return;
+        }
+        int subjects = policy.subjects() > 0 ? policy.subjects() : 10;
+        Lookup lookup = policy.compile(subjects);
+
+        SplittableRandom random = new SplittableRandom(42);
+        int[][] marks = new int[subjects][students];
+        for (int[] column : marks) {
+            for (int i = 0; i < students; i++) {
+                column[i] = random.nextInt(101);
+            }
+        }
+
+        double[] limits = new double[policy.thresholds.length];
+        for (int k = 0; k < limits.length; k++) {
+            limits[k] = policy.thresholds[k].doubleValue();
+        }
+        double curve = policy.curve.doubleValue();
+        byte[] ladder = new byte[students];
+        byte[] codes = null;
+        long ladderNanos = Long.MAX_VALUE;
+        long tableNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < students; i++) {
+                int total = 0;
+                for (int s = 0; s < subjects; s++) {
+                    total += lookup.weights[s] * marks[s][i];
+                }
+                double average = (double) total / lookup.weightSum + curve;
+                byte k = 0;
+                while (average < limits[k]) {
+                    k++;
+                }
+                ladder[i] = k;
+            }
+            long t1 = System.nanoTime();
+            codes = lookup.classify(marks);
+            long t2 = System.nanoTime();
+            ladderNanos = Math.min(ladderNanos, t1 - t0);
+            tableNanos = Math.min(tableNanos, t2 - t1);
+        }
+
+        int mismatches = 0;
+        for (int i = 0; i < students; i++) {
+            if (codes[i] != ladder[i]) {
+                mismatches++;
+            }
+        }
+        System.out.printf("Policy %s: %,d students x %d subjects, %d cores%n", policy.getName(), students, subjects,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("Threshold ladder: %,d ms%n", ladderNanos / 1_000_000);
+        System.out.printf("Compiled table:   %,d ms%n", tableNanos / 1_000_000);
+        System.out.println(mismatches == 0 ? "PASS" : "FAIL: " + mismatches + " grades differ");
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Plays the guessing game millions of times with different guessing
+// strategies and ways of picking the hidden number, and reports how often
+// each one wins at each difficulty:
+//   java GuessSimulation [rounds per case]
+//
+// Rounds are split into tasks on the common fork-join pool. Every task gets
+// its own SplittableRandom, split from one seeded root before the run, so
+// threads never share a generator and a run can be repeated exactly.
+class GuessSimulation {
+    private static final int TASK_ROUNDS = 50_000;
+
+    // A player: told the bounds at the start of a round, then asked for
+    // guesses and told the answer to each. One instance per task, reused
+    // from round to round.
+    interface Strategy {
+        void start(int lower, int upper);
+
+        int nextGuess(SplittableRandom random);
+
+        void answer(int guess, GuessingGame.Answer answer);
+    }
+
+    // Keeps the range the number can still be in
+    private abstract static class Narrowing implements Strategy {
+        int low;
+        int high;
+
+        @Override
+        public void start(int lower, int upper) {
+            low = lower;
+            high = upper;
+        }
+
+        @Override
+        public void answer(int guess, GuessingGame.Answer answer) {
+            if (answer == GuessingGame.Answer.TOO_LOW) {
+                low = guess + 1;
+            } else if (answer == GuessingGame.Answer.TOO_HIGH) {
+                high = guess - 1;
+            }
+        }
+    }
+
+    // Always the middle of what is left
+    static final class BinarySearch extends Narrowing {
+        @Override
+        public int nextGuess(SplittableRandom random) {
+            return (low + high) >>> 1;
+        }
+    }
+
+    // Any number still possible, picked at random
+    static final class RandomGuess extends Narrowing {
+        @Override
+        public int nextGuess(SplittableRandom random) {
+            return random.nextInt(low, high + 1);
+        }
+    }
+
+    // Picks the hidden number for each round
+    interface Target {
+        int pick(SplittableRandom random);
+    }
+
+    static Target uniform() {
+        return random -> random.nextInt(GuessingGame.LOWER_BOUND, GuessingGame.UPPER_BOUND + 1);
+    }
+
+    // The numbers binary search needs the most guesses for, picked at
+    // random; the best a host can do against the best player
+    static Target adversarial() {
+        int[] depth = new int[GuessingGame.UPPER_BOUND + 1];
+        int deepest = 0;
+        BinarySearch search = new BinarySearch();
+        for (int target = GuessingGame.LOWER_BOUND; target <= GuessingGame.UPPER_BOUND; target++) {
+            search.start(GuessingGame.LOWER_BOUND, GuessingGame.UPPER_BOUND);
+            int guess;
+            do {
+                guess = search.nextGuess(null);
+                depth[target]++;
+                search.answer(guess, guess < target ? GuessingGame.Answer.TOO_LOW : GuessingGame.Answer.TOO_HIGH);
+            } while (guess != target);
+            deepest = Math.max(deepest, depth[target]);
+        }
+        List<Integer> hardest = new ArrayList<>();
+        for (int target = GuessingGame.LOWER_BOUND; target <= GuessingGame.UPPER_BOUND; target++) {
+            if (depth[target] == deepest) {
+                hardest.add(target);
+            }
+        }
+        int[] targets = hardest.stream().mapToInt(Integer::intValue).toArray();
+        return random -> targets[random.nextInt(targets.length)];
+    }
+
+    // Wins and attempts summed over a batch of rounds
+    static final class Tally {
+        long rounds;
+        long wins;
+        long winningAttempts;
+
+        Tally add(Tally other) {
+            rounds += other.rounds;
+            wins += other.wins;
+            winningAttempts += other.winningAttempts;
+            return this;
+        }
+    }
+
+    // Plays the rounds in parallel; the same seed gives the same tally
+    static Tally simulate(GuessingGame.Difficulty difficulty, Supplier<Strategy> strategies,
+                          Target target, long rounds, long seed) {
+        int tasks = (int) ((rounds + TASK_ROUNDS - 1) / TASK_ROUNDS);
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[tasks];
+        for (int t = 0; t < tasks; t++) {
+            randoms[t] = root.split();
+        }
+        return IntStream.range(0, tasks).parallel()
+                .mapToObj(t -> play(difficulty, strategies.get(), target, randoms[t],
+                        Math.min(TASK_ROUNDS, rounds - (long) t * TASK_ROUNDS)))
+                .reduce(Tally::add)
+                .orElseGet(Tally::new);
+    }
+
+    private static Tally play(GuessingGame.Difficulty difficulty, Strategy strategy, Target target,
+                              SplittableRandom random, long rounds) {
+        GuessingGame game = new GuessingGame(difficulty);
+        Tally tally = new Tally();
+        for (long r = 0; r < rounds; r++) {
+            game.newRound(target.pick(random));
+            strategy.start(GuessingGame.LOWER_BOUND, GuessingGame.UPPER_BOUND);
+            while (!game.isOver()) {
+                int guess = strategy.nextGuess(random);
+                strategy.answer(guess, game.guess(guess));
+            }
+            tally.rounds++;
+            if (game.isWon()) {
+                tally.wins++;
+                tally.winningAttempts += game.getAttempts();
+            }
+        }
+        return tally;
+    }
+
+    public static void main(String[] args) {
+        long rounds = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        Map<String, Supplier<Strategy>> strategies = new LinkedHashMap<>();
+        strategies.put("binary search", BinarySearch::new);
+        strategies.put("random", RandomGuess::new);
+        Map<String, Target> targets = new LinkedHashMap<>();
+        targets.put("uniform", uniform());
+        targets.put("adversarial", adversarial());
+
+        System.out.printf("%,d rounds per case, %d cores%n", rounds, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-22s %-14s %-12s %9s %14s%n", "Difficulty", "Strategy", "Target", "Win rate", "Avg attempts");
+        long start = System.nanoTime();
+        long played = 0;
+        long seed = 1;
+        for (GuessingGame.Difficulty difficulty : GuessingGame.Difficulty.values()) {
+            for (Map.Entry<String, Supplier<Strategy>> strategy : strategies.entrySet()) {
+                for (Map.Entry<String, Target> target : targets.entrySet()) {
+                    Tally tally = simulate(difficulty, strategy.getValue(), target.getValue(), rounds, seed++);
+                    played += tally.rounds;
+                    System.out.printf("%-22s %-14s %-12s %8.2f%% %14.2f%n", difficulty, strategy.getKey(),
+                            target.getKey(), 100.0 * tally.wins / tally.rounds,
+                            tally.wins == 0 ? 0 : (double) tally.winningAttempts / tally.wins);
+                }
+            }
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        System.out.printf("%,d rounds in %,d ms (%,d rounds/sec)%n", played, elapsed / 1_000_000,
+                played * 1_000_000_000L / elapsed);
+    }
+}
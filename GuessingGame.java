@@ -0,0 +1,95 @@
+// The rules of one round of the number guessing game, without any Swing:
+// a hidden number between the bounds, a limited number of attempts, and a
+// too low / too high / correct answer for each guess. The window and the
+// simulation both play through this class.
+class GuessingGame {
+    static final int LOWER_BOUND = 1;
+    static final int UPPER_BOUND = 100;
+
+    enum Difficulty {
+        EASY("Easy", 10), MEDIUM("Medium", 7), HARD("Hard", 5);
+
+        final String name;
+        final int maxAttempts;
+
+        Difficulty(String name, int maxAttempts) {
+            this.name = name;
+            this.maxAttempts = maxAttempts;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + maxAttempts + " attempts)";
+        }
+    }
+
+    enum Answer { TOO_LOW, TOO_HIGH, CORRECT }
+
+    private int maxAttempts;
+    private int targetNumber;
+    private int attempts;
+    private boolean over = true;
+    private boolean won;
+
+    public GuessingGame(Difficulty difficulty) {
+        setDifficulty(difficulty);
+    }
+
+    // Applies from the next round
+    public void setDifficulty(Difficulty difficulty) {
+        maxAttempts = difficulty.maxAttempts;
+    }
+
+    // Starts a round with the given hidden number
+    public void newRound(int target) {
+        if (target < LOWER_BOUND || target > UPPER_BOUND) {
+            throw new IllegalArgumentException("Target must be between " + LOWER_BOUND + " and " + UPPER_BOUND);
+        }
+        targetNumber = target;
+        attempts = 0;
+        over = false;
+        won = false;
+    }
+
+    // Uses up an attempt; the round ends on a correct guess or the last attempt
+    public Answer guess(int guess) {
+        if (over) {
+            throw new IllegalStateException("The round is over");
+        }
+        attempts++;
+        Answer answer = guess == targetNumber ? Answer.CORRECT
+                : guess < targetNumber ? Answer.TOO_LOW : Answer.TOO_HIGH;
+        if (answer == Answer.CORRECT) {
+            over = true;
+            won = true;
+        } else if (attempts >= maxAttempts) {
+            over = true;
+        }
+        return answer;
+    }
+
+    // Ends the round as a loss, when the clock runs out
+    public void timeUp() {
+        over = true;
+    }
+
+    public int getTargetNumber() {
+        return targetNumber;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean isOver() {
+        return over;
+    }
+
+    public boolean isWon() {
+        return won;
+    }
+}
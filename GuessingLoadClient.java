@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+// Load generator for GuessingServer.
+// Opens one session per room from one selector thread. Even sessions play:
+// binary search guesses with a think time between them, a new round after
+// each win or loss, recording the latency of every guess. Odd sessions join
+// and wait for the round to time out, recording how late the !TIMEOUT
+// arrives. Prints guesses/sec, guess latency and timer lateness percentiles.
+//   java GuessingLoadClient [host] [port] [rooms] [seconds] [thinkMillis]
+//
+// Lateness is counted from when the NEW was sent plus the time left in the
+// reply. The server started the clock after that, so the figure includes
+// the trip both ways and is never less than the real lateness; a !TIMEOUT
+// before that point is counted as early. Rounds started by JOIN are left
+// out, since every session joins at once and those replies queue up behind
+// thousands of connects; so the run has to last two rounds.
+public class GuessingLoadClient {
+    // Histograms in microseconds; the last bucket collects the rest
+    private static final int BUCKETS = 1_000_000;
+
+    private static final class Session {
+        final String room;
+        final boolean player;
+        final ByteBuffer in = ByteBuffer.allocate(256);
+        ByteBuffer out;
+        long sentAt;
+        long expectedTimeout;
+        boolean joined;
+        boolean timed;
+        int low;
+        int high;
+        int guess;
+
+        Session(String room, boolean player) {
+            this.room = room;
+            this.player = player;
+        }
+    }
+
+    private static long[] latency = new long[BUCKETS];
+    private static long[] lateness = new long[BUCKETS];
+    private static long guesses;
+    private static long rounds;
+    private static long timeouts;
+    private static long early;
+    private static long errors;
+    private static long thinkNanos;
+    private static TimingWheel wheel;
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6060;
+        int rooms = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 130;
+        thinkNanos = (args.length > 4 ? Integer.parseInt(args[4]) : 500) * 1_000_000L;
+        wheel = new TimingWheel(1_000_000, System.nanoTime());
+
+        Selector selector = Selector.open();
+        for (int i = 0; i < rooms; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(new InetSocketAddress(host, port));
+            channel.register(selector, SelectionKey.OP_CONNECT, new Session("room-" + i, i % 2 == 0));
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = 0;
+        long deadline = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            selector.select(wheel.size() == 0 ? 100 : Math.max(1, wheel.nanosToNextTick(System.nanoTime()) / 1_000_000));
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Session session = (Session) key.attachment();
+                SocketChannel channel = (SocketChannel) key.channel();
+                try {
+                    if (key.isConnectable()) {
+                        channel.finishConnect();
+                        send(key, session, "JOIN " + session.room + " MEDIUM");
+                    } else if (key.isWritable()) {
+                        channel.write(session.out);
+                        if (!session.out.hasRemaining()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    } else if (key.isReadable()) {
+                        if (channel.read(session.in) < 0) {
+                            key.cancel();
+                            continue;
+                        }
+                        long now = System.nanoTime();
+                        String line;
+                        while ((line = nextLine(session.in)) != null) {
+                            reply(key, session, line, now);
+                        }
+                        if (measureFrom == 0 && guesses > 0) {
+                            measureFrom = now;
+                        }
+                    }
+                } catch (IOException e) {
+                    key.cancel();
+                    channel.close();
+                }
+            }
+            wheel.advance(System.nanoTime());
+        }
+        long elapsed = Math.max(1, System.nanoTime() - (measureFrom == 0 ? start : measureFrom));
+
+        System.out.printf("Rooms: %d, rounds played: %,d, guesses: %,d, errors: %,d%n", rooms, rounds, guesses, errors);
+        System.out.printf("Throughput: %,d guesses/sec%n", guesses * 1_000_000_000L / elapsed);
+        System.out.printf("Guess latency p50: %d us, p99: %d us, max bucket: %d us%n",
+                percentile(latency, guesses, 0.50), percentile(latency, guesses, 0.99),
+                percentile(latency, guesses, 1.0));
+        if (timeouts == 0) {
+            System.out.println("No timed round ended; run for more than two of the server's rounds");
+        } else {
+            System.out.printf("Timeouts: %,d, early: %,d, lateness p50: %d us, p99: %d us, max bucket: %d us%n",
+                    timeouts, early, percentile(lateness, timeouts, 0.50), percentile(lateness, timeouts, 0.99),
+                    percentile(lateness, timeouts, 1.0));
+        }
+        selector.close();
+    }
+
+    private static void reply(SelectionKey key, Session session, String line, long now) throws IOException {
+        if (line.startsWith("OK ")) {
+            // "OK <attempts left> <millis left>": a new round
+            long millisLeft = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+            session.expectedTimeout = session.sentAt + millisLeft * 1_000_000;
+            session.timed = session.joined;
+            session.joined = true;
+            if (session.player) {
+                session.low = GuessingGame.LOWER_BOUND;
+                session.high = GuessingGame.UPPER_BOUND;
+                guess(key, session);
+            }
+        } else if (line.startsWith("!TIMEOUT")) {
+            if (session.timed) {
+                long micros = (now - session.expectedTimeout) / 1000;
+                if (micros < 0) {
+                    early++;
+                }
+                lateness[(int) Math.min(Math.max(micros, 0), BUCKETS - 1)]++;
+                timeouts++;
+            }
+            // A player finds out from its next guess instead
+            if (!session.player) {
+                send(key, session, "NEW");
+            }
+        } else if (session.player && !line.startsWith("!")) {
+            latency[(int) Math.min((now - session.sentAt) / 1000, BUCKETS - 1)]++;
+            guesses++;
+            if (line.equals("LOW")) {
+                session.low = session.guess + 1;
+                guess(key, session);
+            } else if (line.equals("HIGH")) {
+                session.high = session.guess - 1;
+                guess(key, session);
+            } else if (line.startsWith("WIN") || line.startsWith("LOSE") || line.equals("ERR ROUND_OVER")) {
+                rounds++;
+                send(key, session, "NEW");
+            } else {
+                errors++;
+            }
+        } else if (line.startsWith("ERR")) {
+            errors++;
+        }
+    }
+
+    // Sends the next guess once the think time is up
+    private static void guess(SelectionKey key, Session session) {
+        session.guess = (session.low + session.high) >>> 1;
+        if (thinkNanos == 0) {
+            trySend(key, session, "GUESS " + session.guess);
+        } else {
+            wheel.schedule(thinkNanos, () -> trySend(key, session, "GUESS " + session.guess));
+        }
+    }
+
+    private static void trySend(SelectionKey key, Session session, String request) {
+        try {
+            send(key, session, request);
+        } catch (IOException e) {
+            key.cancel();
+        }
+    }
+
+    private static void send(SelectionKey key, Session session, String request) throws IOException {
+        session.out = ByteBuffer.wrap((request + "\n").getBytes(StandardCharsets.US_ASCII));
+        session.sentAt = System.nanoTime();
+        ((SocketChannel) key.channel()).write(session.out);
+        key.interestOps(session.out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    // Takes the first full line out of the buffer, or null if there is none
+    private static String nextLine(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.position(); i++) {
+            if (buffer.get(i) == '\n') {
+                String line = new String(buffer.array(), 0, i, StandardCharsets.US_ASCII).trim();
+                buffer.flip();
+                buffer.position(i + 1);
+                buffer.compact();
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private static long percentile(long[] histogram, long count, double p) {
+        long target = (long) Math.ceil(count * p);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target && seen > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
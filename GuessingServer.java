@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Multiplayer server for the number guessing game.
+// Any number of rooms, each with its own hidden number, attempt limit and
+// countdown; everyone in a room guesses at the same number and shares the
+// attempts. One selector thread does all the socket I/O and plays every
+// room through GuessingGame. Countdowns all live in one TimingWheel that
+// the same thread advances, instead of a timer per room.
+//
+// Line protocol, one request per line:
+//   JOIN <room> [EASY|MEDIUM|HARD]   -> OK <attempts left> <millis left>
+//   GUESS <number>                   -> LOW | HIGH | WIN <attempts> | LOSE <number>
+//   NEW                              -> OK <attempts left> <millis left>
+//   QUIT                             -> BYE
+// Failures reply "ERR <reason>". Lines starting with '!' are sent without a
+// request: "!END WIN <number>" or "!END LOSE <number>" to the others in the
+// room when a round ends, and "!TIMEOUT <number>" to everyone when the time
+// runs out.
+//
+// A session with replies still waiting to go out is not read from until
+// they have, so a client that sends without reading only fills its own
+// socket buffers; one that still falls more than MAX_PENDING bytes behind,
+// on events alone, is disconnected.
+public class GuessingServer {
+    private static final int MAX_LINE = 256;
+    // Unsent output a session may pile up before it is dropped as too slow
+    private static final int MAX_PENDING = 64 * 1024;
+    private static final long TICK_NANOS = 10_000_000;
+    // How long accepting stops after a failed accept, such as running out of
+    // file descriptors, so the selector does not spin on the ready server key
+    private static final long ACCEPT_RETRY_NANOS = 100_000_000;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final SelectionKey serverKey;
+    private long acceptPausedAt = -1;
+    private final long roundNanos;
+    private final TimingWheel wheel = new TimingWheel(TICK_NANOS, System.nanoTime());
+    private final Map<String, Room> rooms = new HashMap<>();
+    private final SplittableRandom random = new SplittableRandom();
+
+    private static final class Session {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE * 4);
+        ByteBuffer out = ByteBuffer.allocate(MAX_LINE);
+        SelectionKey key;
+        Room room;
+        boolean closing;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private static final class Room {
+        final String name;
+        final GuessingGame game;
+        final Set<Session> players = new LinkedHashSet<>();
+        TimingWheel.Timeout countdown;
+        long roundEndsAt;
+
+        Room(String name, GuessingGame.Difficulty difficulty) {
+            this.name = name;
+            this.game = new GuessingGame(difficulty);
+        }
+    }
+
+    public GuessingServer(int port, int roundSeconds) throws IOException {
+        this.roundNanos = roundSeconds * 1_000_000_000L;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 16_384);
+        server.configureBlocking(false);
+        this.serverKey = server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void serve() throws IOException {
+        while (selector.isOpen()) {
+            if (wheel.size() == 0 && acceptPausedAt < 0) {
+                selector.select();
+            } else {
+                long wait = wheel.size() == 0 ? ACCEPT_RETRY_NANOS : wheel.nanosToNextTick(System.nanoTime());
+                if (acceptPausedAt >= 0) {
+                    wait = Math.min(wait, ACCEPT_RETRY_NANOS);
+                }
+                // Wake for the next tick; a select timeout of 0 would block forever
+                selector.select(Math.max(1, (wait + 999_999) / 1_000_000));
+            }
+            if (acceptPausedAt >= 0 && System.nanoTime() - acceptPausedAt >= ACCEPT_RETRY_NANOS) {
+                acceptPausedAt = -1;
+                serverKey.interestOps(SelectionKey.OP_ACCEPT);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    try {
+                        accept();
+                    } catch (IOException e) {
+                        // The rest wait in the backlog; the listening socket stays open
+                        System.err.println("Accept failed, retrying shortly: " + e.getMessage());
+                        acceptPausedAt = System.nanoTime();
+                        serverKey.interestOps(0);
+                    }
+                    continue;
+                }
+                Session session = (Session) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        read(session);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(session);
+                    }
+                } catch (IOException e) {
+                    close(session);
+                }
+            }
+            wheel.advance(System.nanoTime());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                Session session = new Session(channel);
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+
+    // Handles every complete line in the buffer
+    private void read(Session session) throws IOException {
+        if (session.channel.read(session.in) < 0) {
+            close(session);
+            return;
+        }
+        ByteBuffer in = session.in;
+        int start = 0;
+        for (int i = 0; i < in.position() && !session.closing && session.key.isValid(); i++) {
+            if (in.get(i) == '\n') {
+                String line = new String(in.array(), start, i - start, StandardCharsets.US_ASCII).trim();
+                start = i + 1;
+                if (!line.isEmpty()) {
+                    send(session, handle(session, line));
+                }
+            }
+        }
+        in.flip();
+        in.position(start);
+        in.compact();
+        if (!in.hasRemaining()) {
+            // No newline in a full buffer: not a client we understand
+            close(session);
+            return;
+        }
+        flush(session);
+    }
+
+    private String handle(Session session, String line) {
+        String[] parts = line.split(" +");
+        try {
+            switch (parts[0].toUpperCase(Locale.ROOT)) {
+                case "JOIN":
+                    return join(session, parts[1],
+                            parts.length > 2 ? GuessingGame.Difficulty.valueOf(parts[2].toUpperCase(Locale.ROOT))
+                                    : GuessingGame.Difficulty.MEDIUM);
+                case "GUESS":
+                    return guess(session, Integer.parseInt(parts[1]));
+                case "NEW":
+                    return newRound(session);
+                case "QUIT":
+                    leave(session);
+                    session.closing = true;
+                    return "BYE";
+                default:
+                    return "ERR UNKNOWN_COMMAND";
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return "ERR BAD_REQUEST";
+        }
+    }
+
+    // Joins or opens a room; a new room starts its first round straight away.
+    // The difficulty only counts when the room is opened.
+    private String join(Session session, String name, GuessingGame.Difficulty difficulty) {
+        leave(session);
+        Room room = rooms.get(name);
+        if (room == null) {
+            room = new Room(name, difficulty);
+            rooms.put(name, room);
+            startRound(room);
+        }
+        room.players.add(session);
+        session.room = room;
+        return status(room);
+    }
+
+    private String guess(Session session, int guess) {
+        Room room = session.room;
+        if (room == null) {
+            return "ERR NOT_IN_ROOM";
+        }
+        if (room.game.isOver()) {
+            return "ERR ROUND_OVER";
+        }
+        GuessingGame.Answer answer = room.game.guess(guess);
+        if (answer == GuessingGame.Answer.CORRECT) {
+            endRound(room, session, "!END WIN " + room.game.getTargetNumber());
+            return "WIN " + room.game.getAttempts();
+        }
+        if (room.game.isOver()) {
+            endRound(room, session, "!END LOSE " + room.game.getTargetNumber());
+            return "LOSE " + room.game.getTargetNumber();
+        }
+        return answer == GuessingGame.Answer.TOO_LOW ? "LOW" : "HIGH";
+    }
+
+    private String newRound(Session session) {
+        Room room = session.room;
+        if (room == null) {
+            return "ERR NOT_IN_ROOM";
+        }
+        if (!room.game.isOver()) {
+            return "ERR ROUND_RUNNING";
+        }
+        startRound(room);
+        return status(room);
+    }
+
+    private void startRound(Room room) {
+        room.game.newRound(random.nextInt(GuessingGame.LOWER_BOUND, GuessingGame.UPPER_BOUND + 1));
+        room.roundEndsAt = System.nanoTime() + roundNanos;
+        room.countdown = wheel.schedule(roundNanos, () -> timeUp(room));
+    }
+
+    // Runs from the wheel on the selector thread
+    private void timeUp(Room room) {
+        room.countdown = null;
+        room.game.timeUp();
+        broadcast(room, null, "!TIMEOUT " + room.game.getTargetNumber());
+    }
+
+    private void endRound(Room room, Session winner, String event) {
+        wheel.cancel(room.countdown);
+        room.countdown = null;
+        broadcast(room, winner, event);
+    }
+
+    // Sends the event to everyone in the room but one. Works on a copy: a
+    // failed flush closes that player, which takes them out of room.players.
+    private void broadcast(Room room, Session except, String event) {
+        for (Session player : new ArrayList<>(room.players)) {
+            if (player != except && player.room == room) {
+                send(player, event);
+                tryFlush(player);
+            }
+        }
+    }
+
+    private String status(Room room) {
+        long left = room.game.isOver() ? 0 : Math.max(0, room.roundEndsAt - System.nanoTime()) / 1_000_000;
+        return "OK " + (room.game.getMaxAttempts() - room.game.getAttempts()) + " " + left;
+    }
+
+    // The last one out closes the room
+    private void leave(Session session) {
+        Room room = session.room;
+        if (room == null) {
+            return;
+        }
+        session.room = null;
+        room.players.remove(session);
+        if (room.players.isEmpty()) {
+            wheel.cancel(room.countdown);
+            rooms.remove(room.name);
+        }
+    }
+
+    // Queues a line; it goes out on the next flush
+    private void send(Session session, String line) {
+        if (!session.key.isValid()) {
+            return;
+        }
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.US_ASCII);
+        if (session.out.position() + bytes.length > MAX_PENDING) {
+            close(session);
+            return;
+        }
+        if (session.out.remaining() < bytes.length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(session.out.capacity() * 2, session.out.position() + bytes.length));
+            session.out.flip();
+            bigger.put(session.out);
+            session.out = bigger;
+        }
+        session.out.put(bytes);
+    }
+
+    private void tryFlush(Session session) {
+        try {
+            flush(session);
+        } catch (IOException e) {
+            close(session);
+        }
+    }
+
+    private void flush(Session session) throws IOException {
+        if (!session.key.isValid()) {
+            return;
+        }
+        session.out.flip();
+        session.channel.write(session.out);
+        boolean pending = session.out.hasRemaining();
+        session.out.compact();
+        if (pending) {
+            // Stop taking requests until the replies have gone out
+            session.key.interestOps(SelectionKey.OP_WRITE);
+        } else if (session.closing) {
+            close(session);
+        } else {
+            session.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void close(Session session) {
+        leave(session);
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    public int roomCount() {
+        return rooms.size();
+    }
+
+    // java GuessingServer [port] [roundSeconds]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 6060;
+        int roundSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        GuessingServer guessingServer = new GuessingServer(port, roundSeconds);
+        System.out.println("Guessing server listening on port " + port + ", " + roundSeconds + " s rounds");
+        guessingServer.serve();
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// In-memory ledger holding many bank accounts keyed by account number.
+// Accounts live in an open-addressing table with primitive long keys, so a
+// lookup does not box the account number. Lookups read the current table
+// without locking; only opening an account (and growing the table) locks.
+// With a journal attached, every successful change is recorded durably
+// before the call returns. A change is checked, applied and appended to the
+// journal while its accounts are locked, so each account's records are in
+// the order its changes happened and replay never sees a withdrawal before
+// the deposit that paid for it.
+class Ledger {
+    enum Status { OK, NO_ACCOUNT, INSUFFICIENT_FUNDS, INVALID_AMOUNT, ACCOUNT_EXISTS }
+
+    private static final long EMPTY = 0;
+
+    private static final class Table {
+        final long[] keys;
+        final BankAccount[] accounts;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            accounts = new BankAccount[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table;
+    private int size;
+    private TransactionJournal journal;
+
+    public Ledger() {
+        this(1024);
+    }
+
+    // Pre-sizes the table for the expected number of accounts
+    public Ledger(int expectedAccounts) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedAccounts * 2 - 1)) << 1;
+        table = new Table(capacity);
+    }
+
+    // Rebuilds a ledger from a journal file and keeps journaling to it
+    public static Ledger recover(String journalFile, boolean groupCommit) throws IOException {
+        Ledger ledger = new Ledger();
+        long valid = TransactionJournal.replay(journalFile, ledger);
+        ledger.journal = new TransactionJournal(journalFile, groupCommit, valid);
+        return ledger;
+    }
+
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    // Lets bulk callers skip the per-transaction wait for the disk; call
+    // sync() afterwards to make everything durable
+    public void setDeferredSync(boolean deferred) {
+        if (journal != null) {
+            journal.setDeferredSync(deferred);
+        }
+    }
+
+    public void sync() throws IOException {
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    // Account numbers must be positive
+    public synchronized Status open(long accountNumber, long initialPaise) {
+        if (accountNumber <= EMPTY) {
+            return Status.NO_ACCOUNT;
+        }
+        if (initialPaise < 0) {
+            return Status.INVALID_AMOUNT;
+        }
+        if (find(table, accountNumber) != null) {
+            return Status.ACCOUNT_EXISTS;
+        }
+        // Journaled before the account becomes visible, so no later
+        // transaction on it can reach the journal ahead of the open
+        long ticket = append(TransactionJournal.OPEN, accountNumber, 0, initialPaise, () -> { });
+        if ((size + 1) * 2 > table.keys.length) {
+            table = grow(table);
+        }
+        insert(table, accountNumber, new BankAccount(initialPaise));
+        size++;
+        awaitDurable(ticket);
+        return Status.OK;
+    }
+
+    public BankAccount get(long accountNumber) {
+        BankAccount account = find(table, accountNumber);
+        if (account == null) {
+            // A concurrent open may not be visible yet; check again under the lock
+            synchronized (this) {
+                account = find(table, accountNumber);
+            }
+        }
+        return account;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public Status deposit(long accountNumber, long paise) {
+        if (paise <= 0) {
+            return Status.INVALID_AMOUNT;
+        }
+        BankAccount account = get(accountNumber);
+        if (account == null) {
+            return Status.NO_ACCOUNT;
+        }
+        long ticket;
+        synchronized (account) {
+            try {
+                account.depositPaise(paise);
+            } catch (ArithmeticException e) {
+                // The balance would overflow
+                return Status.INVALID_AMOUNT;
+            }
+            ticket = append(TransactionJournal.DEPOSIT, accountNumber, 0, paise, () -> account.tryWithdraw(paise));
+        }
+        awaitDurable(ticket);
+        return Status.OK;
+    }
+
+    public Status withdraw(long accountNumber, long paise) {
+        if (paise <= 0) {
+            return Status.INVALID_AMOUNT;
+        }
+        BankAccount account = get(accountNumber);
+        if (account == null) {
+            return Status.NO_ACCOUNT;
+        }
+        long ticket;
+        synchronized (account) {
+            if (!account.tryWithdraw(paise)) {
+                return Status.INSUFFICIENT_FUNDS;
+            }
+            ticket = append(TransactionJournal.WITHDRAW, accountNumber, 0, paise, () -> account.depositPaise(paise));
+        }
+        awaitDurable(ticket);
+        return Status.OK;
+    }
+
+    // Moves money between two accounts as one step. Both accounts are locked
+    // in account-number order, so two opposite transfers cannot deadlock.
+    public Status transfer(long fromAccount, long toAccount, long paise) {
+        if (paise <= 0 || fromAccount == toAccount) {
+            return Status.INVALID_AMOUNT;
+        }
+        BankAccount from = get(fromAccount);
+        BankAccount to = get(toAccount);
+        if (from == null || to == null) {
+            return Status.NO_ACCOUNT;
+        }
+        BankAccount first = fromAccount < toAccount ? from : to;
+        BankAccount second = fromAccount < toAccount ? to : from;
+        long ticket;
+        synchronized (first) {
+            synchronized (second) {
+                if (!from.tryWithdraw(paise)) {
+                    return Status.INSUFFICIENT_FUNDS;
+                }
+                try {
+                    to.depositPaise(paise);
+                } catch (ArithmeticException e) {
+                    from.depositPaise(paise);
+                    return Status.INVALID_AMOUNT;
+                }
+                ticket = append(TransactionJournal.TRANSFER, fromAccount, toAccount, paise, () -> {
+                    to.tryWithdraw(paise);
+                    from.depositPaise(paise);
+                });
+            }
+        }
+        awaitDurable(ticket);
+        return Status.OK;
+    }
+
+    // Called with the changed accounts still locked. If the record cannot
+    // be added the change is undone before the error is thrown.
+    private long append(int op, long account, long other, long paise, Runnable undo) {
+        if (journal == null) {
+            return -1;
+        }
+        try {
+            return journal.append(op, account, other, paise);
+        } catch (IOException e) {
+            undo.run();
+            throw new UncheckedIOException("Could not journal transaction", e);
+        }
+    }
+
+    // Called after letting go of the locks. If the disk write fails the
+    // change may or may not be on disk, so the journal refuses everything
+    // after it and the ledger stops accepting changes.
+    private void awaitDurable(long ticket) {
+        if (journal != null) {
+            try {
+                journal.awaitDurable(ticket);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not journal transaction", e);
+            }
+        }
+    }
+
+    // Sum of all balances, for reconciliation once transactions have stopped
+    public synchronized long totalPaise() {
+        long total = 0;
+        for (BankAccount account : table.accounts) {
+            if (account != null) {
+                total += account.balancePaise();
+            }
+        }
+        return total;
+    }
+
+    private static BankAccount find(Table t, long key) {
+        int i = slot(key, t.mask);
+        while (true) {
+            long k = t.keys[i];
+            if (k == key) {
+                // The key may be published before the account; treat as a miss
+                return t.accounts[i];
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    private static void insert(Table t, long key, BankAccount account) {
+        int i = slot(key, t.mask);
+        while (t.keys[i] != EMPTY) {
+            i = (i + 1) & t.mask;
+        }
+        t.accounts[i] = account;
+        t.keys[i] = key;
+    }
+
+    private static Table grow(Table old) {
+        Table t = new Table(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.keys[i] != EMPTY) {
+                insert(t, old.keys[i], old.accounts[i]);
+            }
+        }
+        return t;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,400 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Marks per student per subject, kept on disk column by column.
+//
+// marks.dat holds a 20-byte header (magic "MRKS", version, subjects,
+// capacity, count) and then one column per subject of `capacity` bytes, one
+// byte per student: the mark 0..100, or -1 while it has not been entered.
+// Reading the whole class is one sequential read of each column. Row order
+// is kept in marks.dat.rolls, one roll number per line.
+//
+// Changing a mark writes that single byte in place and adjusts the
+// student's weighted total by the difference, so nothing else is re-read or
+// summed; the grade is then one lookup in the grading policy's table.
+// The count in the header is written last when a student is added, so a
+// crash part way through leaves the student out rather than half in. Every
+// change is forced to disk before the call returns.
+//
+// The store keeps the marks in memory, so it holds an exclusive lock on
+// marks.dat.lock while open: a second program, or a second store in this
+// one, is refused instead of overwriting marks it has not seen.
+class MarkStore implements Closeable {
+    static final int MISSING = -1;
+    private static final byte[] MAGIC = {'M', 'R', 'K', 'S'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int COUNT_OFFSET = 16;
+    private static final int MIN_CAPACITY = 64;
+
+    private final Path file;
+    private final Path rollsFile;
+    private final FileChannel lockChannel;
+    private final int subjects;
+    private final GradingPolicy.Lookup policy;
+    private FileChannel channel;
+    private int capacity;
+    private byte[][] columns;
+    private final List<String> rolls = new ArrayList<>();
+    // Bytes of marks.dat.rolls holding the rolls above
+    private long rollsLength;
+    // Lower-cased roll -> row
+    private final Map<String, Integer> rows = new HashMap<>();
+    // Weighted by the policy
+    private int[] totals;
+    // Marks entered so far per row; the grade needs all of them
+    private int[] entered;
+
+    // Opens the store, creating it if needed. An existing store must have
+    // been created with the same number of subjects.
+    public MarkStore(String fileName, int subjects) throws IOException {
+        this(fileName, GradingPolicy.standard().compile(subjects));
+    }
+
+    // Grades with the given policy instead of the standard bands
+    public MarkStore(String fileName, GradingPolicy.Lookup policy) throws IOException {
+        this.file = Paths.get(fileName);
+        this.rollsFile = Paths.get(fileName + ".rolls");
+        this.subjects = policy.subjects();
+        this.policy = policy;
+        this.lockChannel = FileChannel.open(Paths.get(fileName + ".lock"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock();
+            if (Files.exists(file)) {
+                open();
+            } else {
+                create();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    // Released when lockChannel is closed
+    private void lock() throws IOException {
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IOException(file + " is already open in another window or program");
+        }
+    }
+
+    private void create() throws IOException {
+        byte[][] empty = new byte[subjects][MIN_CAPACITY];
+        for (byte[] column : empty) {
+            Arrays.fill(column, (byte) MISSING);
+        }
+        Files.deleteIfExists(rollsFile);
+        rewrite(MIN_CAPACITY, empty);
+        capacity = MIN_CAPACITY;
+        columns = empty;
+        totals = new int[capacity];
+        entered = new int[capacity];
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) {
+            throw new IOException(file + " is not a marks file");
+        }
+        int stored = header.getInt();
+        if (stored != subjects) {
+            throw new IOException(file + " holds marks for " + stored + " subjects, not " + subjects);
+        }
+        capacity = header.getInt();
+        int count = header.getInt();
+        if (capacity < count || channel.size() < HEADER_SIZE + (long) subjects * capacity) {
+            throw new IOException(file + " is truncated");
+        }
+
+        // One read per column, straight into the in-memory copy
+        columns = new byte[subjects][];
+        for (int s = 0; s < subjects; s++) {
+            columns[s] = new byte[capacity];
+            readFully(ByteBuffer.wrap(columns[s]), HEADER_SIZE + (long) s * capacity);
+        }
+        readRolls(count);
+        // Rows past the count are left over from an unfinished add
+        for (byte[] column : columns) {
+            Arrays.fill(column, count, capacity, (byte) MISSING);
+        }
+        totals = new int[capacity];
+        entered = new int[capacity];
+        for (int s = 0; s < subjects; s++) {
+            byte[] column = columns[s];
+            int weight = policy.weight(s);
+            for (int i = 0; i < count; i++) {
+                if (column[i] != MISSING) {
+                    totals[i] += weight * column[i];
+                    entered[i]++;
+                }
+            }
+        }
+    }
+
+    // Keeps the first count rolls and cuts off anything after them
+    private void readRolls(int count) throws IOException {
+        byte[] bytes = Files.exists(rollsFile) ? Files.readAllBytes(rollsFile) : new byte[0];
+        int start = 0;
+        for (int i = 0; i < bytes.length && rolls.size() < count; i++) {
+            if (bytes[i] == '\n') {
+                String roll = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                rows.put(StudentRepository.key(roll), rolls.size());
+                rolls.add(roll);
+                start = i + 1;
+            }
+        }
+        if (rolls.size() < count) {
+            throw new IOException(rollsFile + " is missing roll numbers");
+        }
+        if (bytes.length > start) {
+            try (FileChannel rollsChannel = FileChannel.open(rollsFile, StandardOpenOption.WRITE)) {
+                rollsChannel.truncate(start);
+            }
+        }
+        rollsLength = start;
+    }
+
+    public int subjects() {
+        return subjects;
+    }
+
+    public synchronized int size() {
+        return rolls.size();
+    }
+
+    // The student's marks with MISSING for subjects not yet entered, or null
+    // for a roll with no marks at all
+    public synchronized int[] marks(String roll) {
+        Integer row = rows.get(StudentRepository.key(roll));
+        if (row == null) {
+            return null;
+        }
+        int[] marks = new int[subjects];
+        for (int s = 0; s < subjects; s++) {
+            marks[s] = columns[s][row];
+        }
+        return marks;
+    }
+
+    // Null until every subject has a mark
+    public synchronized String grade(String roll) {
+        Integer row = rows.get(StudentRepository.key(roll));
+        return row == null ? null : grade(row);
+    }
+
+    private String grade(int row) {
+        return entered[row] == subjects ? policy.gradeOf(totals[row]) : null;
+    }
+
+    // Sets one mark and returns the student's new grade, or null while some
+    // subjects are still missing
+    public synchronized String setMark(String roll, int subject, int mark) throws IOException {
+        int[] marks = marks(roll);
+        if (marks == null) {
+            marks = new int[subjects];
+            Arrays.fill(marks, MISSING);
+        }
+        marks[subject] = mark;
+        return setMarks(roll, marks);
+    }
+
+    // Sets every mark (MISSING to clear one) and returns the new grade, or
+    // null while some subjects are still missing. Only marks that changed
+    // are written.
+    public synchronized String setMarks(String roll, int[] marks) throws IOException {
+        if (marks.length != subjects) {
+            throw new IllegalArgumentException("Expected " + subjects + " marks");
+        }
+        for (int mark : marks) {
+            if (mark != MISSING && (mark < 0 || mark > 100)) {
+                throw new IllegalArgumentException("Marks must be between 0 and 100");
+            }
+        }
+        Integer row = rows.get(StudentRepository.key(roll));
+        if (row == null) {
+            return add(roll, marks);
+        }
+        boolean changed = false;
+        for (int s = 0; s < subjects; s++) {
+            int old = columns[s][row];
+            if (old != marks[s]) {
+                write(s, row, marks[s]);
+                update(s, row, old, marks[s]);
+                changed = true;
+            }
+        }
+        if (changed) {
+            channel.force(false);
+        }
+        return grade(row);
+    }
+
+    // Writes everything to disk before touching memory, so an add that
+    // throws part way counts nothing and can simply be tried again
+    private String add(String roll, int[] marks) throws IOException {
+        int row = rolls.size();
+        if (row == capacity) {
+            grow();
+        }
+        // The whole row is written, in case an unfinished add left old bytes there
+        for (int s = 0; s < subjects; s++) {
+            write(s, row, marks[s]);
+        }
+        byte[] line = (roll + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel rollsChannel = FileChannel.open(rollsFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Cut off a roll left by an add that failed part way
+            rollsChannel.truncate(rollsLength);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                rollsChannel.write(buffer, rollsLength + buffer.position());
+            }
+            rollsChannel.force(false);
+        }
+        // The row and its roll are on disk before the count that makes them count
+        channel.force(false);
+        writeCount(row + 1);
+        channel.force(false);
+
+        rollsLength += line.length;
+        for (int s = 0; s < subjects; s++) {
+            update(s, row, MISSING, marks[s]);
+        }
+        rows.put(StudentRepository.key(roll), row);
+        rolls.add(roll);
+        return grade(row);
+    }
+
+    // Keeps the row's total and count of entered marks in step with one change
+    private void update(int subject, int row, int old, int mark) {
+        columns[subject][row] = (byte) mark;
+        if (old != MISSING) {
+            totals[row] -= policy.weight(subject) * old;
+            entered[row]--;
+        }
+        if (mark != MISSING) {
+            totals[row] += policy.weight(subject) * mark;
+            entered[row]++;
+        }
+    }
+
+    private void write(int subject, int row, int mark) throws IOException {
+        ByteBuffer one = ByteBuffer.wrap(new byte[]{(byte) mark});
+        while (one.hasRemaining()) {
+            channel.write(one, HEADER_SIZE + (long) subject * capacity + row);
+        }
+    }
+
+    private void writeCount(int rowCount) throws IOException {
+        ByteBuffer count = ByteBuffer.allocate(4).putInt(rowCount);
+        count.flip();
+        while (count.hasRemaining()) {
+            channel.write(count, COUNT_OFFSET + count.position());
+        }
+    }
+
+    // Doubles every column; the file is rewritten since each column moves.
+    // The bigger columns only replace the old ones once the file is in place.
+    private void grow() throws IOException {
+        int bigger = capacity * 2;
+        byte[][] grown = new byte[subjects][];
+        for (int s = 0; s < subjects; s++) {
+            grown[s] = Arrays.copyOf(columns[s], bigger);
+            Arrays.fill(grown[s], rolls.size(), bigger, (byte) MISSING);
+        }
+        rewrite(bigger, grown);
+        capacity = bigger;
+        columns = grown;
+        totals = Arrays.copyOf(totals, capacity);
+        entered = Arrays.copyOf(entered, capacity);
+    }
+
+    // Writes the whole file to a temporary copy and swaps it in. The old
+    // channel stays open until the new file is in place.
+    private void rewrite(int capacity, byte[][] columns) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putInt(VERSION).putInt(subjects).putInt(capacity).putInt(rolls.size()).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (byte[] column : columns) {
+                ByteBuffer buffer = ByteBuffer.wrap(column);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        FileChannel old = channel;
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(file + " is truncated");
+            }
+        }
+    }
+
+    // Roll numbers in row order, matching columns()
+    public synchronized String[] rolls() {
+        return rolls.toArray(new String[0]);
+    }
+
+    // The whole class as marks[subject][student], ready for GradingEngine;
+    // a missing mark comes out as -1, which the engine treats as invalid
+    public synchronized int[][] columns() {
+        int count = rolls.size();
+        int[][] marks = new int[subjects][count];
+        for (int s = 0; s < subjects; s++) {
+            byte[] column = columns[s];
+            int[] out = marks[s];
+            for (int i = 0; i < count; i++) {
+                out[i] = column[i];
+            }
+        }
+        return marks;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            lockChannel.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// Helpers for amounts held as long paise (1 rupee = 100 paise).
+class Money {
+    public static final long INVALID = Long.MIN_VALUE;
+
+    // Parses "123", "123.4" or "123.45" in text[start, end) into paise without
+    // allocating. Returns INVALID for anything else, including negative amounts
+    // and more than two decimal places.
+    public static long parsePaise(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return INVALID;
+        }
+        long rupees = 0;
+        int i = start;
+        for (; i < end && text.charAt(i) != '.'; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            // Stops growing once it is too big for paise, so it cannot
+            // wrap; the exact multiply below then rejects it
+            if (rupees <= Long.MAX_VALUE / 100) {
+                rupees = rupees * 10 + digit;
+            }
+        }
+        long paise = 0;
+        if (i < end) {
+            int decimals = end - i - 1;
+            if (decimals < 1 || decimals > 2) {
+                return INVALID;
+            }
+            for (int j = i + 1; j < end; j++) {
+                int digit = text.charAt(j) - '0';
+                if (digit < 0 || digit > 9) {
+                    return INVALID;
+                }
+                paise = paise * 10 + digit;
+            }
+            if (decimals == 1) {
+                paise *= 10;
+            }
+        } else if (i == start) {
+            return INVALID;
+        }
+        try {
+            return Math.addExact(Math.multiplyExact(rupees, 100), paise);
+        } catch (ArithmeticException e) {
+            return INVALID;
+        }
+    }
+
+    public static long parsePaise(CharSequence text) {
+        return parsePaise(text, 0, text.length());
+    }
+
+    // Formats paise as rupees with two decimals, e.g. 123405 -> "1234.05"
+    public static String format(long paise) {
+        return format(paise, new StringBuilder(24)).toString();
+    }
+
+    // Appends the formatted amount to a caller-owned buffer without allocating
+    public static StringBuilder format(long paise, StringBuilder out) {
+        if (paise < 0) {
+            out.append('-');
+            paise = -paise;
+        }
+        long fraction = paise % 100;
+        out.append(paise / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+}
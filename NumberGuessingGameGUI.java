@@ -1,24 +1,63 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.Random;
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// The last lines of the game log. Once full, each new line overwrites the
+// oldest, so the log takes the same memory after a minute or a day.
+class LogRing {
+    private final String[] lines;
+    private int first;
+    private int size;
+
+    public LogRing(int capacity) {
+        lines = new String[capacity];
+    }
 
-public class NumberGuessingGameGUI extends JFrame {
+    public void add(String line) {
+        if (size < lines.length) {
+            lines[(first + size++) % lines.length] = line;
+        } else {
+            lines[first] = line;
+            first = (first + 1) % lines.length;
+        }
+    }
+
+    // Oldest first, one line each
+    public String text() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(lines[(first + i) % lines.length]).append('\n');
+        }
+        return sb.toString();
+    }
+}
 
-    private int MAX_ATTEMPTS = 7;
-    private final int LOWER_BOUND = 1;
-    private final int UPPER_BOUND = 100;
+public class NumberGuessingGameGUI extends JFrame {
 
-    private int targetNumber;
-    private int attempts;
-    private int roundsPlayed = 0;
-    private int roundsWon = 0;
+    private static final int LOWER_BOUND = GuessingGame.LOWER_BOUND;
+    private static final int UPPER_BOUND = GuessingGame.UPPER_BOUND;
+    private static final String HISTORY_FILE = "rounds.dat";
+    private static final int LEADERBOARD_SIZE = 10;
+    private static final int LOG_LINES = 200;
+
+    // The rules live in GuessingGame; this window only shows them
+    private final GuessingGame game = new GuessingGame(GuessingGame.Difficulty.MEDIUM);
+    private final SplittableRandom random = new SplittableRandom();
+    // Null if the history file could not be opened; the game still works
+    private RoundHistory history;
+    private final LogRing logLines = new LogRing(LOG_LINES);
+    private long roundStartedAt;
+    private long roundsPlayed = 0;
+    private long roundsWon = 0;
 
     private JLabel instructionLabel, feedbackLabel, attemptsLabel, scoreLabel, timerLabel;
     private JTextField guessField;
-    private JButton guessButton, playAgainButton, resetButton, exitButton;
+    private JButton guessButton, playAgainButton, resetButton, leaderboardButton, exitButton;
     private JTextArea logArea;
-    private JComboBox<String> difficultyBox;
+    private JComboBox<GuessingGame.Difficulty> difficultyBox;
     private Timer countdownTimer;
     private int timeLeft = 60; // seconds
 
@@ -28,6 +67,22 @@ public class NumberGuessingGameGUI extends JFrame {
         setSize(600, 600);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout(10, 10));
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeHistory();
+            }
+        });
+
+        // Carry the score over from earlier sessions
+        try {
+            history = new RoundHistory(HISTORY_FILE, LEADERBOARD_SIZE);
+            roundsPlayed = history.getRoundsPlayed();
+            roundsWon = history.getRoundsWon();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not open " + HISTORY_FILE + ": " + e.getMessage()
+                    + "\nRounds will not be saved.", "Round History", JOptionPane.WARNING_MESSAGE);
+        }
 
         // Top Panel - Instructions and Difficulty
         JPanel topPanel = new JPanel(new GridLayout(2, 1));
@@ -35,16 +90,11 @@ public class NumberGuessingGameGUI extends JFrame {
         instructionLabel.setFont(new Font("Arial", Font.BOLD, 18));
         topPanel.add(instructionLabel);
 
-        String[] difficulties = {"Easy (10 attempts)", "Medium (7 attempts)", "Hard (5 attempts)"};
-        difficultyBox = new JComboBox<>(difficulties);
-        difficultyBox.setSelectedIndex(1); // Medium
+        difficultyBox = new JComboBox<>(GuessingGame.Difficulty.values());
+        difficultyBox.setSelectedItem(GuessingGame.Difficulty.MEDIUM);
         difficultyBox.setFont(new Font("Arial", Font.PLAIN, 14));
         difficultyBox.addActionListener(e -> {
-            switch (difficultyBox.getSelectedIndex()) {
-                case 0 -> MAX_ATTEMPTS = 10;
-                case 1 -> MAX_ATTEMPTS = 7;
-                case 2 -> MAX_ATTEMPTS = 5;
-            }
+            game.setDifficulty((GuessingGame.Difficulty) difficultyBox.getSelectedItem());
             resetGame();
         });
         JPanel diffPanel = new JPanel();
@@ -62,9 +112,9 @@ public class NumberGuessingGameGUI extends JFrame {
         guessButton = new JButton("Submit Guess");
         guessButton.setFont(new Font("Arial", Font.BOLD, 16));
 
-        feedbackLabel = new JLabel("You have " + MAX_ATTEMPTS + " attempts.", SwingConstants.CENTER);
+        feedbackLabel = new JLabel("You have " + game.getMaxAttempts() + " attempts.", SwingConstants.CENTER);
         attemptsLabel = new JLabel("Attempts used: 0", SwingConstants.CENTER);
-        scoreLabel = new JLabel("Score: 0 win(s) out of 0 round(s)", SwingConstants.CENTER);
+        scoreLabel = new JLabel("Score: " + roundsWon + " win(s) out of " + roundsPlayed + " round(s)", SwingConstants.CENTER);
         timerLabel = new JLabel("Time left: 60s", SwingConstants.CENTER);
 
         centerPanel.add(guessField);
@@ -84,10 +134,12 @@ public class NumberGuessingGameGUI extends JFrame {
         playAgainButton = new JButton("Play Again");
         playAgainButton.setEnabled(false);
         resetButton = new JButton("Reset Game");
+        leaderboardButton = new JButton("Leaderboard");
         exitButton = new JButton("Exit");
 
         buttonPanel.add(playAgainButton);
         buttonPanel.add(resetButton);
+        buttonPanel.add(leaderboardButton);
         buttonPanel.add(exitButton);
         bottomPanel.add(buttonPanel, BorderLayout.NORTH);
 
@@ -102,21 +154,25 @@ public class NumberGuessingGameGUI extends JFrame {
         // Action listeners
         guessButton.addActionListener(new GuessButtonListener());
         playAgainButton.addActionListener(e -> resetGame());
+        // Only the score on screen starts again; the history keeps every round
         resetButton.addActionListener(e -> {
             roundsWon = 0;
             roundsPlayed = 0;
             resetGame();
         });
-        exitButton.addActionListener(e -> System.exit(0));
+        leaderboardButton.addActionListener(e -> showLeaderboard());
+        exitButton.addActionListener(e -> {
+            closeHistory();
+            System.exit(0);
+        });
 
         // Start the game
         startNewRound();
     }
 
     private void startNewRound() {
-        Random random = new Random();
-        targetNumber = random.nextInt(UPPER_BOUND - LOWER_BOUND + 1) + LOWER_BOUND;
-        attempts = 0;
+        game.newRound(random.nextInt(LOWER_BOUND, UPPER_BOUND + 1));
+        roundStartedAt = System.nanoTime();
         timeLeft = 60;
 
         guessField.setText("");
@@ -124,11 +180,11 @@ public class NumberGuessingGameGUI extends JFrame {
         guessButton.setEnabled(true);
         playAgainButton.setEnabled(false);
 
-        feedbackLabel.setText("You have " + MAX_ATTEMPTS + " attempts.");
+        feedbackLabel.setText("You have " + game.getMaxAttempts() + " attempts.");
         attemptsLabel.setText("Attempts used: 0");
         instructionLabel.setText("Guess a number between " + LOWER_BOUND + " and " + UPPER_BOUND + ":");
         timerLabel.setText("Time left: 60s");
-        logArea.setText("New round started. Good luck!\n");
+        log("New round started. Good luck!");
 
         if (countdownTimer != null && countdownTimer.isRunning()) {
             countdownTimer.stop();
@@ -139,9 +195,10 @@ public class NumberGuessingGameGUI extends JFrame {
             timerLabel.setText("Time left: " + timeLeft + "s");
             if (timeLeft <= 0) {
                 countdownTimer.stop();
-                feedbackLabel.setText("Time's up! The number was: " + targetNumber);
-                logArea.append("Time ran out. You lost this round.\n");
-                endRound(false);
+                game.timeUp();
+                feedbackLabel.setText("Time's up! The number was: " + game.getTargetNumber());
+                log("Time ran out. You lost this round.");
+                endRound(RoundHistory.Outcome.TIME_UP);
             }
         });
         countdownTimer.start();
@@ -169,38 +226,89 @@ public class NumberGuessingGameGUI extends JFrame {
                 return;
             }
 
-            attempts++;
-            attemptsLabel.setText("Attempts used: " + attempts);
-            logArea.append("Attempt " + attempts + ": " + guess + "\n");
+            GuessingGame.Answer answer = game.guess(guess);
+            attemptsLabel.setText("Attempts used: " + game.getAttempts());
+            log("Attempt " + game.getAttempts() + ": " + guess);
 
-            if (guess == targetNumber) {
+            if (answer == GuessingGame.Answer.CORRECT) {
                 feedbackLabel.setText("Congratulations! You guessed it!");
-                logArea.append("Correct guess! You won this round.\n");
+                log("Correct guess! You won this round.");
                 roundsWon++;
-                endRound(true);
-            } else if (guess < targetNumber) {
+                endRound(RoundHistory.Outcome.WON);
+            } else if (answer == GuessingGame.Answer.TOO_LOW) {
                 feedbackLabel.setText("Too low!");
-                logArea.append("Too low.\n");
+                log("Too low.");
             } else {
                 feedbackLabel.setText("Too high!");
-                logArea.append("Too high.\n");
+                log("Too high.");
             }
 
-            if (attempts >= MAX_ATTEMPTS && guess != targetNumber) {
-                feedbackLabel.setText("Out of attempts! The number was: " + targetNumber);
-                logArea.append("You lost this round.\n");
-                endRound(false);
+            if (game.isOver() && !game.isWon()) {
+                feedbackLabel.setText("Out of attempts! The number was: " + game.getTargetNumber());
+                log("You lost this round.");
+                endRound(RoundHistory.Outcome.OUT_OF_ATTEMPTS);
             }
         }
     }
 
-    private void endRound(boolean won) {
+    private void endRound(RoundHistory.Outcome outcome) {
         roundsPlayed++;
         guessField.setEnabled(false);
         guessButton.setEnabled(false);
         playAgainButton.setEnabled(true);
         countdownTimer.stop();
         scoreLabel.setText("Score: " + roundsWon + " win(s) out of " + roundsPlayed + " round(s)");
+        saveRound(outcome);
+    }
+
+    private void saveRound(RoundHistory.Outcome outcome) {
+        if (history == null) {
+            return;
+        }
+        GuessingGame.Difficulty difficulty = (GuessingGame.Difficulty) difficultyBox.getSelectedItem();
+        int millis = (int) Math.min(Integer.MAX_VALUE, (System.nanoTime() - roundStartedAt) / 1_000_000);
+        try {
+            if (history.record(new RoundHistory.Round(difficulty, outcome, game.getAttempts(), millis,
+                    System.currentTimeMillis()))) {
+                log("New entry on the " + difficulty.name + " leaderboard!");
+            }
+        } catch (IOException e) {
+            log("Could not save this round: " + e.getMessage());
+        }
+    }
+
+    private void showLeaderboard() {
+        if (history == null) {
+            JOptionPane.showMessageDialog(this, "Rounds are not being saved.", "Leaderboard",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        GuessingGame.Difficulty difficulty = (GuessingGame.Difficulty) difficultyBox.getSelectedItem();
+        List<RoundHistory.Round> best = history.leaderboard(difficulty);
+        StringBuilder sb = new StringBuilder("Best wins on " + difficulty.name + ":\n");
+        if (best.isEmpty()) {
+            sb.append("No wins yet.");
+        }
+        for (int i = 0; i < best.size(); i++) {
+            RoundHistory.Round round = best.get(i);
+            sb.append(String.format("%2d. %d attempt(s) in %.1fs%n", i + 1, round.attempts, round.millis / 1000.0));
+        }
+        JOptionPane.showMessageDialog(this, sb.toString(), "Leaderboard", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void log(String line) {
+        logLines.add(line);
+        logArea.setText(logLines.text());
+    }
+
+    private void closeHistory() {
+        try {
+            if (history != null) {
+                history.close();
+            }
+        } catch (IOException e) {
+            // Every round was written as it ended
+        }
     }
 
     public static void main(String[] args) {
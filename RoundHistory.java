@@ -0,0 +1,212 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Every round of the guessing game, kept in an append-only file so the
+// score and the leaderboard survive a restart. Each round is a fixed
+// 20-byte record:
+//   finished at in epoch millis (long), time taken in millis (int),
+//   attempts (short), difficulty (byte), outcome (byte), CRC32 of the rest (int)
+// Opening the file reads it once to count rounds and fill the leaderboards;
+// after that a round costs one small write and a heap update, and memory
+// does not grow with the number of rounds played.
+// Several windows can share the file. Every write holds an exclusive lock on
+// it and first reads the rounds other windows have added since, so records
+// always go on the real end of the file and never over someone else's.
+class RoundHistory implements Closeable {
+    static final int RECORD_SIZE = 20;
+    private static final int CRC_OFFSET = 16;
+
+    enum Outcome { WON, OUT_OF_ATTEMPTS, TIME_UP }
+
+    static final class Round {
+        final GuessingGame.Difficulty difficulty;
+        final Outcome outcome;
+        final int attempts;
+        final int millis;
+        final long finishedAt;
+
+        Round(GuessingGame.Difficulty difficulty, Outcome outcome, int attempts, int millis, long finishedAt) {
+            this.difficulty = difficulty;
+            this.outcome = outcome;
+            this.attempts = attempts;
+            this.millis = millis;
+            this.finishedAt = finishedAt;
+        }
+    }
+
+    // Fewer attempts first, then the faster round, then the earlier one
+    static final Comparator<Round> BEST_FIRST = Comparator.<Round>comparingInt(r -> r.attempts)
+            .thenComparingInt(r -> r.millis)
+            .thenComparingLong(r -> r.finishedAt);
+
+    // The best wins so far. The heap keeps the worst of them at the root, so
+    // a new win is compared with one entry and at most replaces it.
+    static final class Leaderboard {
+        private final int size;
+        private final PriorityQueue<Round> heap;
+
+        Leaderboard(int size) {
+            this.size = size;
+            this.heap = new PriorityQueue<>(size + 1, BEST_FIRST.reversed());
+        }
+
+        // Returns whether the round made the board
+        boolean offer(Round round) {
+            if (heap.size() < size) {
+                heap.add(round);
+                return true;
+            }
+            if (size > 0 && BEST_FIRST.compare(round, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(round);
+                return true;
+            }
+            return false;
+        }
+
+        // Best first
+        List<Round> entries() {
+            List<Round> entries = new ArrayList<>(heap);
+            entries.sort(BEST_FIRST);
+            return entries;
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 4096);
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Map<GuessingGame.Difficulty, Leaderboard> leaderboards =
+            new EnumMap<>(GuessingGame.Difficulty.class);
+    private long roundsPlayed;
+    private long roundsWon;
+    // Where the records read so far end
+    private long loaded;
+
+    public RoundHistory(String fileName, int leaderboardSize) throws IOException {
+        for (GuessingGame.Difficulty difficulty : GuessingGame.Difficulty.values()) {
+            leaderboards.put(difficulty, new Leaderboard(leaderboardSize));
+        }
+        this.channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        try {
+            FileLock lock = channel.lock();
+            try {
+                catchUp();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Counts the intact records past the ones read so far. Called with the
+    // lock held, so no other window is half way through a write; anything
+    // after the last intact record is a torn or damaged tail left by a
+    // crash, and is dropped so new records stay aligned.
+    private void catchUp() throws IOException {
+        GuessingGame.Difficulty[] difficulties = GuessingGame.Difficulty.values();
+        Outcome[] outcomes = Outcome.values();
+        ByteBuffer buf = ByteBuffer.wrap(scratch);
+        long size = channel.size();
+        while (size - loaded >= RECORD_SIZE) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), (size - loaded) / RECORD_SIZE * RECORD_SIZE));
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, loaded + chunk.position()) < 0) {
+                    throw new IOException("Round history shrank while being read");
+                }
+            }
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                chunk.get(scratch);
+                buf.clear();
+                long finishedAt = buf.getLong();
+                int millis = buf.getInt();
+                int attempts = buf.getShort();
+                int difficulty = buf.get();
+                int outcome = buf.get();
+                if (buf.getInt() != checksum(scratch) || difficulty < 0 || difficulty >= difficulties.length
+                        || outcome < 0 || outcome >= outcomes.length) {
+                    channel.truncate(loaded);
+                    return;
+                }
+                count(new Round(difficulties[difficulty], outcomes[outcome], attempts, millis, finishedAt));
+                loaded += RECORD_SIZE;
+            }
+        }
+        if (size > loaded) {
+            channel.truncate(loaded);
+        }
+    }
+
+    // Appends the round and returns whether it made its leaderboard, counting
+    // any rounds other windows have added first. The write is not forced to
+    // disk: a round is small enough to lose in a power cut, and the file
+    // stays intact either way.
+    public boolean record(Round round) throws IOException {
+        FileLock lock = channel.lock();
+        try {
+            catchUp();
+            write(round);
+        } finally {
+            lock.release();
+        }
+        return count(round);
+    }
+
+    private void write(Round round) throws IOException {
+        record.clear();
+        record.putLong(round.finishedAt)
+                .putInt(round.millis)
+                .putShort((short) round.attempts)
+                .put((byte) round.difficulty.ordinal())
+                .put((byte) round.outcome.ordinal());
+        record.putInt(checksum(record.array()));
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record, loaded + record.position());
+        }
+        loaded += RECORD_SIZE;
+    }
+
+    private boolean count(Round round) {
+        roundsPlayed++;
+        if (round.outcome != Outcome.WON) {
+            return false;
+        }
+        roundsWon++;
+        return leaderboards.get(round.difficulty).offer(round);
+    }
+
+    public long getRoundsPlayed() {
+        return roundsPlayed;
+    }
+
+    public long getRoundsWon() {
+        return roundsWon;
+    }
+
+    public List<Round> leaderboard(GuessingGame.Difficulty difficulty) {
+        return leaderboards.get(difficulty).entries();
+    }
+
+    private int checksum(byte[] bytes) {
+        crc.reset();
+        crc.update(bytes, 0, CRC_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
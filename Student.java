@@ -0,0 +1,40 @@
+// One student record, shared by the console and Swing front ends.
+// Immutable, so readers on any thread can hold on to one without locking.
+class Student {
+    private final String name;
+    private final String rollNumber;
+    private final String grade;
+
+    public Student(String name, String rollNumber, String grade) {
+        this.name = name;
+        this.rollNumber = rollNumber;
+        this.grade = grade;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRollNumber() {
+        return rollNumber;
+    }
+
+    public String getGrade() {
+        return grade;
+    }
+
+    @Override
+    public String toString() {
+        return "Name: " + name + ", Roll No: " + rollNumber + ", Grade: " + grade;
+    }
+
+    public String toFileFormat() {
+        return name + "," + rollNumber + "," + grade;
+    }
+
+    // Returns null for a line without all three fields
+    public static Student fromFileFormat(String line) {
+        String[] parts = StudentFileLoader.parseLine(line);
+        return parts == null ? null : new Student(parts[0], parts[1], parts[2]);
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+
+// Bulk import and export for the student roster.
+// Import streams a CSV file (quoted fields allowed, header row optional) or a
+// StudentBinaryFormat file, checks every row and drops repeated rolls, then
+// adds the survivors in one commit, so a million rows cost one file write.
+// Rejected rows go to the report with a reason, followed by a summary.
+// students.txt itself has no quoting, so a field holding a comma or line
+// break is rejected even though the import file may quote it.
+// Export streams the roster to CSV, or to the binary format for a .dat file.
+class StudentBatch {
+    private static final String HEADER = "name,roll,grade";
+
+    private final StudentRepository repository;
+
+    public StudentBatch(StudentRepository repository) {
+        this.repository = repository;
+    }
+
+    // Returns the summary line, which also ends the report
+    public String importFile(String inputFile, String reportFile) throws IOException {
+        long start = System.nanoTime();
+        List<Student> students = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        long rows = 0;
+        long rejected = 0;
+        try (PrintWriter report = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(reportFile), StandardCharsets.UTF_8), 1 << 16))) {
+            if (StudentBinaryFormat.isBinary(inputFile)) {
+                long[] counts = {0, 0};
+                rows = StudentBinaryFormat.read(inputFile, fields -> {
+                    counts[0]++;
+                    String reason = check(fields, seen, students);
+                    if (reason != null) {
+                        counts[1]++;
+                        report.println("Row " + counts[0] + ": " + reason + ": " + toCsv(fields));
+                    }
+                });
+                rejected = counts[1];
+            } else {
+                try (CsvReader in = new CsvReader(new InputStreamReader(
+                        new FileInputStream(inputFile), StandardCharsets.UTF_8))) {
+                    List<String> record = new ArrayList<>(3);
+                    while (in.next(record)) {
+                        if (record.size() == 1 && record.get(0).isBlank()) {
+                            continue;
+                        }
+                        if (rows == 0 && isHeader(record)) {
+                            continue;
+                        }
+                        rows++;
+                        String[] fields = record.toArray(new String[0]);
+                        String reason = check(fields, seen, students);
+                        if (reason != null) {
+                            rejected++;
+                            report.println("Line " + in.recordLine() + ": " + reason + ": " + toCsv(fields));
+                        }
+                    }
+                }
+            }
+
+            int added;
+            try {
+                added = repository.addAll(students).join();
+            } catch (CompletionException e) {
+                throw new IOException("Could not save the imported students", e.getCause());
+            }
+            if (added < students.size()) {
+                report.println((students.size() - added) + " rows were skipped because another program"
+                        + " added the same roll numbers first");
+            }
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            String summary = "Imported: " + added + ", rejected: " + rejected + ", in " + elapsed / 1_000_000
+                    + " ms (" + rows * 1_000_000_000L / elapsed + " rows/sec)";
+            report.println(summary);
+            return summary;
+        }
+    }
+
+    // Only the exact header row, so a first student called "name" is kept
+    private static boolean isHeader(List<String> record) {
+        String[] columns = HEADER.split(",");
+        if (record.size() != columns.length) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (!record.get(i).trim().equalsIgnoreCase(columns[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns null and queues the student if the row is good, otherwise the reason
+    private String check(String[] fields, Set<String> seen, List<Student> students) {
+        if (fields.length != 3) {
+            return "Expected name, roll and grade";
+        }
+        for (int i = 0; i < 3; i++) {
+            fields[i] = fields[i].trim();
+            if (fields[i].isEmpty()) {
+                return "Empty field";
+            }
+            // students.txt has no quoting, so these would split the record
+            if (fields[i].indexOf(',') >= 0 || fields[i].indexOf('\n') >= 0 || fields[i].indexOf('\r') >= 0) {
+                return "Field contains a comma or line break";
+            }
+        }
+        if (!seen.add(StudentRepository.key(fields[1]))) {
+            return "Roll number repeated in file";
+        }
+        if (repository.searchStudent(fields[1]) != null) {
+            return "Roll number already exists";
+        }
+        students.add(new Student(fields[0], fields[1], fields[2]));
+        return null;
+    }
+
+    // Returns the summary line
+    public String exportFile(String outputFile) throws IOException {
+        long start = System.nanoTime();
+        // References only; each row is formatted as it is written
+        Student[] all = repository.snapshot();
+        if (outputFile.endsWith(".dat")) {
+            StudentBinaryFormat.write(new AbstractList<String[]>() {
+                @Override
+                public String[] get(int i) {
+                    return new String[]{all[i].getName(), all[i].getRollNumber(), all[i].getGrade()};
+                }
+
+                @Override
+                public int size() {
+                    return all.length;
+                }
+            }, outputFile);
+        } else {
+            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(outputFile), StandardCharsets.UTF_8), 1 << 16)) {
+                out.write(HEADER);
+                out.newLine();
+                for (Student s : all) {
+                    writeField(out, s.getName());
+                    out.write(',');
+                    writeField(out, s.getRollNumber());
+                    out.write(',');
+                    writeField(out, s.getGrade());
+                    out.newLine();
+                }
+            }
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        return "Exported: " + all.length + ", in " + elapsed / 1_000_000 + " ms ("
+                + all.length * 1_000_000_000L / elapsed + " rows/sec)";
+    }
+
+    // The row as one CSV line, for the report
+    private static String toCsv(String[] fields) {
+        StringWriter out = new StringWriter();
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                writeField(out, fields[i]);
+            }
+        } catch (IOException e) {
+            // StringWriter does not throw
+        }
+        return out.toString();
+    }
+
+    // Quotes the field only when it needs it
+    static void writeField(Writer out, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    // CSV reader for RFC 4180 style files: fields may be quoted, a quote
+    // inside one is doubled, and a quoted field may span lines. Reads through
+    // its own buffer, one record at a time.
+    static final class CsvReader implements Closeable {
+        private final Reader in;
+        private final char[] buffer = new char[1 << 16];
+        private final StringBuilder field = new StringBuilder();
+        private int pos;
+        private int len;
+        private long line = 1;
+        private long recordLine;
+
+        CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        // Line the last record started on
+        long recordLine() {
+            return recordLine;
+        }
+
+        // Reads the next record into fields; returns false at end of input
+        boolean next(List<String> fields) throws IOException {
+            fields.clear();
+            int c = read();
+            if (c < 0) {
+                return false;
+            }
+            recordLine = line;
+            while (true) {
+                field.setLength(0);
+                if (c == '"') {
+                    while (true) {
+                        c = read();
+                        if (c < 0) {
+                            throw new IOException("Unclosed quote in the record on line " + recordLine);
+                        }
+                        if (c == '"') {
+                            c = read();
+                            if (c != '"') {
+                                break;
+                            }
+                        } else if (c == '\n') {
+                            line++;
+                        }
+                        field.append((char) c);
+                    }
+                }
+                while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                    field.append((char) c);
+                    c = read();
+                }
+                fields.add(field.toString());
+                if (c != ',') {
+                    break;
+                }
+                c = read();
+            }
+            if (c == '\r' && peek() == '\n') {
+                c = read();
+            }
+            if (c >= 0) {
+                line++;
+            }
+            return true;
+        }
+
+        private int read() throws IOException {
+            if (pos == len && !fill()) {
+                return -1;
+            }
+            return buffer[pos++];
+        }
+
+        private int peek() throws IOException {
+            if (pos == len && !fill()) {
+                return -1;
+            }
+            return buffer[pos];
+        }
+
+        private boolean fill() throws IOException {
+            len = in.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (len < 0) {
+                len = 0;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
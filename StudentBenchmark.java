@@ -0,0 +1,351 @@
+import java.io.File;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Throughput benchmark and multi-process check for StudentRepository.
+// Compile together with the repository and run one of the modes:
+//   javac StudentBenchmark.java
+//   java StudentBenchmark readwrite [readers] [writers] [students] [seconds]
+//   java StudentBenchmark processes [processes] [studentsEach]
+//   java StudentBenchmark bulk [rows]
+//   java StudentBenchmark list [rows]
+//   java StudentBenchmark lookup [students...]
+//   java StudentBenchmark prefix [students]
+public class StudentBenchmark {
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "readwrite";
+        switch (mode) {
+            case "readwrite" -> readWrite(
+                    args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 2,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 200_000,
+                    args.length > 4 ? Integer.parseInt(args[4]) : 5);
+            case "processes" -> processes(
+                    args.length > 1 ? Integer.parseInt(args[1]) : 4,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 500);
+            case "bulk" -> bulk(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+            case "list" -> list(args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000);
+            case "lookup" -> {
+                int[] sizes = args.length > 1
+                        ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                        : new int[]{10_000, 1_000_000, 10_000_000};
+                for (int students : sizes) {
+                    lookup(students);
+                }
+            }
+            case "prefix" -> prefix(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+            case "child" -> child(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            default -> System.out.println("Unknown mode: " + mode);
+        }
+    }
+
+    // Readers look students up by roll, by row and by prefix while writers
+    // add and remove students, each waiting for its change to be saved.
+    // Runs once with readers alone and once with the writers added.
+    private static void readWrite(int readers, int writers, int students, int seconds) throws Exception {
+        Path dir = Files.createTempDirectory("student-bench");
+        Path file = dir.resolve("students.txt");
+        List<String> lines = new ArrayList<>(students);
+        for (int i = 0; i < students; i++) {
+            lines.add("Student " + i + ",R" + i + "," + "ABCDF".charAt(i % 5));
+        }
+        Files.write(file, lines);
+
+        StudentRepository repository = new StudentRepository(file.toString(), true);
+        repository.load(count -> { });
+        System.out.printf("Students: %,d, readers: %d, writers: %d%n", repository.size(), readers, writers);
+
+        long[] alone = run(repository, readers, 0, students, seconds);
+        System.out.printf("Readers only:   %,d reads/sec%n", alone[0] / seconds);
+        long[] mixed = run(repository, readers, writers, students, seconds);
+        System.out.printf("With writers:   %,d reads/sec, %,d saved writes/sec%n", mixed[0] / seconds, mixed[1] / seconds);
+
+        repository.close();
+        for (File f : Objects.requireNonNull(dir.toFile().listFiles())) {
+            f.delete();
+        }
+        Files.delete(dir);
+    }
+
+    // Returns {reads, writes} done in the time given
+    private static long[] run(StudentRepository repository, int readers, int writers, int students, int seconds)
+            throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, readers + writers));
+        List<Future<Long>> readCounts = new ArrayList<>();
+        List<Future<Long>> writeCounts = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            readCounts.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long ops = 0;
+                while (!stop.get()) {
+                    int i = random.nextInt(students);
+                    switch (i & 3) {
+                        case 0 -> repository.searchPrefix("R" + i / 100, 20);
+                        case 1 -> repository.getStudent(i, StudentRepository.SortKey.NONE);
+                        default -> repository.searchStudent("R" + i);
+                    }
+                    ops++;
+                }
+                return ops;
+            }));
+        }
+        for (int w = 0; w < writers; w++) {
+            int id = w;
+            writeCounts.add(pool.submit(() -> {
+                long ops = 0;
+                while (!stop.get()) {
+                    String roll = "W" + id + "-" + ops;
+                    repository.addStudent(new Student("Writer " + id, roll, "B")).join();
+                    repository.removeStudent(roll).join();
+                    ops += 2;
+                }
+                return ops;
+            }));
+        }
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        long reads = 0;
+        long writes = 0;
+        for (Future<Long> f : readCounts) {
+            reads += f.get();
+        }
+        for (Future<Long> f : writeCounts) {
+            writes += f.get();
+        }
+        pool.shutdown();
+        return new long[]{reads, writes};
+    }
+
+    // Imports a generated CSV file into an empty roster, exports it as CSV
+    // and binary, then imports the binary copy into a second roster
+    private static void bulk(int rows) throws Exception {
+        Path dir = Files.createTempDirectory("student-bulk");
+        Path csv = dir.resolve("import.csv");
+        try (java.io.BufferedWriter out = Files.newBufferedWriter(csv)) {
+            out.write("name,roll,grade\n");
+            for (int i = 0; i < rows; i++) {
+                // Every tenth name is quoted, and a few rows are bad or repeated
+                out.write(i % 10 == 0 ? "\"Student " + i + "\"" : "Student " + i);
+                out.write(i % 1000 == 999 ? ",R" + (i - 1) : ",R" + i);
+                out.write(i % 5000 == 0 ? ",\n" : "," + "ABCDF".charAt(i % 5) + "\n");
+            }
+        }
+
+        StudentRepository repository = new StudentRepository(dir.resolve("students.txt").toString(), true);
+        repository.load(count -> { });
+        StudentBatch batch = new StudentBatch(repository);
+        System.out.println("CSV import:    " + batch.importFile(csv.toString(), dir.resolve("report.txt").toString()));
+        System.out.println("CSV export:    " + batch.exportFile(dir.resolve("export.csv").toString()));
+        System.out.println("Binary export: " + batch.exportFile(dir.resolve("export.dat").toString()));
+        int expected = repository.size();
+        repository.close();
+        repository = null;
+
+        StudentRepository copy = new StudentRepository(dir.resolve("copy.txt").toString(), false);
+        copy.load(count -> { });
+        System.out.println("Binary import: " + new StudentBatch(copy).importFile(
+                dir.resolve("export.dat").toString(), dir.resolve("report2.txt").toString()));
+        System.out.println(copy.size() == expected ? "PASS" : "FAIL");
+        copy.close();
+        for (File f : Objects.requireNonNull(dir.toFile().listFiles())) {
+            f.delete();
+        }
+        Files.delete(dir);
+    }
+
+    // Compares listing the roster with an autoflushing println per student,
+    // the way the console app used to, against StudentPrinter and a cursor.
+    // Output goes to a file so the disk writes are counted too.
+    private static void list(int rows) throws Exception {
+        Path dir = Files.createTempDirectory("student-list");
+        StudentRepository repository = new StudentRepository(dir.resolve("students.txt").toString(), false);
+        repository.load(count -> { });
+        List<Student> students = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            students.add(new Student("Student " + i, "R" + i, String.valueOf("ABCDF".charAt(i % 5))));
+        }
+        repository.addAll(students).join();
+        students = null;
+        Path out = dir.resolve("out.txt");
+
+        long t0 = System.nanoTime();
+        try (java.io.PrintStream ps = new java.io.PrintStream(new java.io.FileOutputStream(out.toFile()), true)) {
+            for (Student s : repository.snapshot()) {
+                ps.println(s);
+            }
+        }
+        long t1 = System.nanoTime();
+        long listed;
+        try (java.io.FileOutputStream fos = new java.io.FileOutputStream(out.toFile())) {
+            listed = new StudentPrinter(fos).printAll(
+                    repository.cursor(StudentRepository.SortKey.NONE, s -> true), 4096);
+        }
+        long t2 = System.nanoTime();
+        long matched;
+        try (java.io.FileOutputStream fos = new java.io.FileOutputStream(out.toFile())) {
+            matched = new StudentPrinter(fos).printAll(
+                    repository.cursor(StudentRepository.SortKey.NAME, StudentRepository.containing("99")), 4096);
+        }
+        long t3 = System.nanoTime();
+
+        System.out.printf("Students: %,d%n", rows);
+        System.out.printf("println per student: %,d ms (%,d rows/sec)%n", (t1 - t0) / 1_000_000, rows * 1_000_000_000L / (t1 - t0));
+        System.out.printf("StudentPrinter:      %,d ms (%,d rows/sec)%n", (t2 - t1) / 1_000_000, listed * 1_000_000_000L / (t2 - t1));
+        System.out.printf("Sorted grep \"99\":   %,d ms, %,d matches%n", (t3 - t2) / 1_000_000, matched);
+        repository.close();
+        for (File f : Objects.requireNonNull(dir.toFile().listFiles())) {
+            f.delete();
+        }
+        Files.delete(dir);
+    }
+
+    // Latency of single lookups by roll, by name prefix and by grade. A
+    // name prefix is a whole name, so it matches a handful of students; a
+    // grade matches a fifth of the roster, so that lookup is timed on far
+    // fewer calls and its cost is mostly copying the result.
+    private static void lookup(int students) throws Exception {
+        Path dir = Files.createTempDirectory("student-lookup");
+        StudentRepository repository = new StudentRepository(dir.resolve("students.txt").toString(), false);
+        repository.load(count -> { });
+        List<Student> batch = new ArrayList<>(students);
+        for (int i = 0; i < students; i++) {
+            batch.add(new Student("Student " + i, "R" + i, String.valueOf("ABCDF".charAt(i % 5))));
+        }
+        repository.addAll(batch).join();
+        batch = null;
+
+        SplittableRandom random = new SplittableRandom(1);
+        int calls = 200_000;
+        long[] byRoll = new long[calls];
+        long[] byName = new long[calls];
+        long found = 0;
+        // One untimed pass first so the JIT has compiled the lookups
+        for (int pass = 0; pass < 2; pass++) {
+            for (int c = 0; c < calls; c++) {
+                String roll = "R" + random.nextInt(students);
+                long t0 = System.nanoTime();
+                Student s = repository.searchStudent(roll);
+                byRoll[c] = System.nanoTime() - t0;
+                found += s != null ? 1 : 0;
+            }
+            for (int c = 0; c < calls; c++) {
+                String prefix = "Student " + random.nextInt(students);
+                long t0 = System.nanoTime();
+                found += repository.searchByNamePrefix(prefix).size();
+                byName[c] = System.nanoTime() - t0;
+            }
+        }
+        long[] byGrade = new long[20];
+        for (int c = 0; c < byGrade.length; c++) {
+            String grade = String.valueOf("ABCDF".charAt(c % 5));
+            long t0 = System.nanoTime();
+            found += repository.searchByGrade(grade).size();
+            byGrade[c] = System.nanoTime() - t0;
+        }
+
+        System.out.printf("Students: %,d (%,d results)%n", students, found);
+        printLatency("By roll", byRoll);
+        printLatency("By name prefix", byName);
+        printLatency("By grade", byGrade);
+        repository.close();
+        for (File f : Objects.requireNonNull(dir.toFile().listFiles())) {
+            f.delete();
+        }
+        Files.delete(dir);
+    }
+
+    // Latency of searchPrefix as the GUI's search-as-you-type calls it, with
+    // the same 500 result limit, for prefixes one to five characters long
+    // plus one that matches nothing. Short prefixes match most of the
+    // roster, so they show whether the limit keeps the cost flat.
+    private static void prefix(int students) throws Exception {
+        Path dir = Files.createTempDirectory("student-prefix");
+        StudentRepository repository = new StudentRepository(dir.resolve("students.txt").toString(), false);
+        repository.load(count -> { });
+        List<Student> batch = new ArrayList<>(students);
+        for (int i = 0; i < students; i++) {
+            batch.add(new Student("Student " + i, "R" + i, String.valueOf("ABCDF".charAt(i % 5))));
+        }
+        repository.addAll(batch).join();
+        batch = null;
+
+        SplittableRandom random = new SplittableRandom(1);
+        int calls = 20_000;
+        long found = 0;
+        System.out.printf("Students: %,d, limit 500%n", students);
+        for (int length = 1; length <= 6; length++) {
+            long[] nanos = new long[calls];
+            // One untimed pass first so the JIT has compiled the search
+            for (int pass = 0; pass < 2; pass++) {
+                for (int c = 0; c < calls; c++) {
+                    String roll = "R" + random.nextInt(students);
+                    String text = length <= 5 ? roll.substring(0, Math.min(length, roll.length())) : "X" + roll;
+                    long t0 = System.nanoTime();
+                    found += repository.searchPrefix(text, 500).size();
+                    nanos[c] = System.nanoTime() - t0;
+                }
+            }
+            printLatency(length <= 5 ? length + " chars" : "No match", nanos);
+        }
+        System.out.printf("  (%,d results)%n", found);
+        repository.close();
+        for (File f : Objects.requireNonNull(dir.toFile().listFiles())) {
+            f.delete();
+        }
+        Files.delete(dir);
+    }
+
+    private static void printLatency(String label, long[] nanos) {
+        Arrays.sort(nanos);
+        System.out.printf("  %-15s p50 %,10d ns, p99 %,12d ns, max %,12d ns%n", label + ":",
+                nanos[nanos.length / 2], nanos[(int) Math.min(nanos.length - 1, (long) nanos.length * 99 / 100)],
+                nanos[nanos.length - 1]);
+    }
+
+    // Starts several JVMs adding students to the same files at once, in
+    // both save modes, and checks that every one of them ends up on disk
+    private static void processes(int processes, int each) throws Exception {
+        Path dir = Files.createTempDirectory("student-procs");
+        Path file = dir.resolve("students.txt");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+
+        long start = System.nanoTime();
+        List<Process> children = new ArrayList<>();
+        for (int p = 0; p < processes; p++) {
+            children.add(new ProcessBuilder(java, "-cp", classpath, "StudentBenchmark", "child",
+                    file.toString(), Integer.toString(p), Integer.toString(each)).inheritIO().start());
+        }
+        for (Process child : children) {
+            child.waitFor();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        StudentRepository repository = new StudentRepository(file.toString(), true);
+        repository.load(count -> { });
+        int expected = processes * each;
+        System.out.printf("Processes: %d, expected %,d students, found %,d, in %d ms%n",
+                processes, expected, repository.size(), elapsed / 1_000_000);
+        System.out.println(repository.size() == expected ? "PASS" : "FAIL");
+        repository.close();
+        for (File f : Objects.requireNonNull(dir.toFile().listFiles())) {
+            f.delete();
+        }
+        Files.delete(dir);
+    }
+
+    // Even-numbered children journal, odd ones rewrite the file, so both
+    // modes run against each other
+    private static void child(String fileName, int id, int count) {
+        String prefix = "P" + id;
+        StudentRepository repository = new StudentRepository(fileName, id % 2 == 0);
+        repository.load(n -> { });
+        for (int i = 0; i < count; i++) {
+            repository.addStudent(new Student("Child " + prefix, prefix + "-" + i, "A")).join();
+        }
+        repository.close();
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Versioned binary file for student records.
+//
+// Header (14 bytes): magic "STDB", version, flags, record count (int) and a
+// CRC32 (int) of everything after the header. With FLAG_GRADE_DICT set a
+// grade dictionary follows (one count byte, then the grades) and each record
+// stores its grade as a one-byte index. Strings are a varint byte length
+// followed by UTF-8, so names may contain commas.
+class StudentBinaryFormat {
+    private static final byte[] MAGIC = {'S', 'T', 'D', 'B'};
+    private static final int VERSION = 1;
+    private static final int FLAG_GRADE_DICT = 1;
+    private static final int HEADER_SIZE = 14;
+    private static final int MAX_DICT_SIZE = 255;
+
+    // True if the file starts with the binary magic
+    public static boolean isBinary(String fileName) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        try (InputStream in = new FileInputStream(fileName)) {
+            return in.readNBytes(magic, 0, magic.length) == magic.length && Arrays.equals(magic, MAGIC);
+        }
+    }
+
+    // Rows are {name, roll, grade}
+    public static void write(List<String[]> rows, String fileName) throws IOException {
+        Map<String, Integer> dict = new LinkedHashMap<>();
+        for (String[] row : rows) {
+            if (dict.size() > MAX_DICT_SIZE) {
+                break;
+            }
+            dict.putIfAbsent(row[2], dict.size());
+        }
+        boolean useDict = dict.size() <= MAX_DICT_SIZE;
+
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(fileName);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                     new BufferedOutputStream(file, 1 << 16), crc))) {
+            // Header is patched in once the body checksum is known
+            file.write(new byte[HEADER_SIZE]);
+            if (useDict) {
+                out.writeByte(dict.size());
+                for (String grade : dict.keySet()) {
+                    writeString(out, grade);
+                }
+            }
+            for (String[] row : rows) {
+                writeString(out, row[0]);
+                writeString(out, row[1]);
+                if (useDict) {
+                    out.writeByte(dict.get(row[2]));
+                } else {
+                    writeString(out, row[2]);
+                }
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).put((byte) VERSION).put((byte) (useDict ? FLAG_GRADE_DICT : 0));
+            header.putInt(rows.size()).putInt((int) crc.getValue()).flip();
+            FileChannel channel = file.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_SIZE - header.remaining());
+            }
+        }
+    }
+
+    public static List<String[]> read(String fileName) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        read(fileName, rows::add);
+        return rows;
+    }
+
+    // Streams rows to the consumer and returns how many there were. The
+    // checksum is only known at the end, so a caller that must not act on a
+    // damaged file should hold its changes until this returns.
+    public static int read(String fileName, Consumer<String[]> consumer) throws IOException {
+        try (InputStream file = new BufferedInputStream(new FileInputStream(fileName), 1 << 16)) {
+            DataInputStream headerIn = new DataInputStream(file);
+            byte[] magic = new byte[MAGIC.length];
+            headerIn.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(fileName + " is not a student binary file");
+            }
+            int version = headerIn.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported student file version " + version);
+            }
+            int flags = headerIn.readUnsignedByte();
+            int count = headerIn.readInt();
+            int expectedCrc = headerIn.readInt();
+
+            // No string can be longer than the whole body, so a damaged
+            // length fails here instead of allocating whatever it says
+            long bodySize = Files.size(Paths.get(fileName)) - HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(file, crc));
+            byte[] scratch = new byte[256];
+            String[] dict = null;
+            if ((flags & FLAG_GRADE_DICT) != 0) {
+                dict = new String[in.readUnsignedByte()];
+                for (int i = 0; i < dict.length; i++) {
+                    dict[i] = readString(in, scratch, bodySize);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                String name = readString(in, scratch, bodySize);
+                String roll = readString(in, scratch, bodySize);
+                String grade;
+                if (dict != null) {
+                    int index = in.readUnsignedByte();
+                    if (index >= dict.length) {
+                        throw new IOException("Bad grade index " + index + " in " + fileName);
+                    }
+                    grade = dict[index];
+                } else {
+                    grade = readString(in, scratch, bodySize);
+                }
+                consumer.accept(new String[]{name, roll, grade});
+            }
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("Checksum mismatch in " + fileName);
+            }
+            return count;
+        }
+    }
+
+    // Converts the comma-separated students.txt into the binary format
+    public static int convert(String textFile, String binaryFile) throws IOException {
+        List<String[]> rows = StudentFileLoader.load(textFile);
+        write(rows, binaryFile);
+        return rows.size();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int len = bytes.length;
+        while (len >= 0x80) {
+            out.writeByte((len & 0x7F) | 0x80);
+            len >>>= 7;
+        }
+        out.writeByte(len);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, byte[] scratch, long maxLength) throws IOException {
+        long length = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28) {
+                throw new IOException("String length is too long a varint");
+            }
+            b = in.readUnsignedByte();
+            length |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (length > maxLength) {
+            throw new IOException("String length " + length + " is past the end of the file");
+        }
+        int len = (int) length;
+        byte[] buf = len <= scratch.length ? scratch : new byte[len];
+        in.readFully(buf, 0, len);
+        return new String(buf, 0, len, StandardCharsets.UTF_8);
+    }
+
+    // Converts a text file and compares size and load/save speed:
+    //   java StudentBinaryFormat students.txt students.dat
+    public static void main(String[] args) throws IOException {
+        String textFile = args.length > 0 ? args[0] : "students.txt";
+        String binaryFile = args.length > 1 ? args[1] : "students.dat";
+        String textCopy = textFile + ".bench";
+        List<String[]> rows = StudentFileLoader.load(textFile);
+
+        long t0 = System.nanoTime();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(textCopy))) {
+            for (String[] row : rows) {
+                bw.write(row[0] + "," + row[1] + "," + row[2]);
+                bw.newLine();
+            }
+        }
+        long t1 = System.nanoTime();
+        write(rows, binaryFile);
+        long t2 = System.nanoTime();
+        List<String[]> textRows = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(textCopy))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                textRows.add(line.split(","));
+            }
+        }
+        long t3 = System.nanoTime();
+        List<String[]> binaryRows = read(binaryFile);
+        long t4 = System.nanoTime();
+
+        System.out.printf("Converted %d records%n", rows.size());
+        System.out.printf("Size: text %d bytes, binary %d bytes%n",
+                Files.size(Paths.get(textCopy)), Files.size(Paths.get(binaryFile)));
+        System.out.printf("Save: text %d ms, binary %d ms%n", (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000);
+        System.out.printf("Load: text %d ms (%d rows), binary %d ms (%d rows)%n",
+                (t3 - t2) / 1_000_000, textRows.size(), (t4 - t3) / 1_000_000, binaryRows.size());
+        Files.delete(Paths.get(textCopy));
+    }
+}
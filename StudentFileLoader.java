@@ -0,0 +1,168 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Parallel loader for the comma-separated student file.
+// The file is memory-mapped, cut into newline-aligned chunks and each chunk
+// is scanned for commas and newlines on the fork-join pool. Rows come back
+// as {name, roll, grade} in file order.
+class StudentFileLoader {
+    private static final long MIN_CHUNK_SIZE = 1 << 20;   // 1 MB
+    private static final long MAX_CHUNK_SIZE = 64 << 20;  // 64 MB
+    private static final int FIELDS = 3;
+
+    // Returns an empty list if the file does not exist yet
+    public static List<String[]> load(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<ChunkTask> tasks = new ArrayList<>();
+            long[] bounds = chunkBounds(channel, size);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+                tasks.add(new ChunkTask(buffer));
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            int total = 0;
+            for (ChunkTask task : tasks) {
+                total += task.join().size();
+            }
+            List<String[]> rows = new ArrayList<>(total);
+            for (ChunkTask task : tasks) {
+                rows.addAll(task.join());
+            }
+            return rows;
+        }
+    }
+
+    // Splits a single line the same way, for callers that already have text
+    public static String[] parseLine(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        List<String[]> rows = new ArrayList<>(1);
+        parse(ByteBuffer.wrap(bytes), rows);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // Picks chunk start offsets, each moved forward to just past a newline
+    private static long[] chunkBounds(FileChannel channel, long size) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / parallelism + 1));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long pos = chunkSize;
+        while (pos < size) {
+            long lineEnd = -1;
+            long scan = pos;
+            while (lineEnd < 0 && scan < size) {
+                probe.clear();
+                int n = channel.read(probe, scan);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        lineEnd = scan + i + 1;
+                        break;
+                    }
+                }
+                scan += n;
+            }
+            if (lineEnd < 0 || lineEnd >= size) {
+                break;
+            }
+            bounds.add(lineEnd);
+            pos = lineEnd + chunkSize;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static class ChunkTask extends RecursiveTask<List<String[]>> {
+        private static final long serialVersionUID = 1L;
+        private final ByteBuffer buffer;
+
+        ChunkTask(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        protected List<String[]> compute() {
+            List<String[]> rows = new ArrayList<>();
+            parse(buffer, rows);
+            return rows;
+        }
+    }
+
+    // Hand-rolled scanner: commas and newlines are single bytes in UTF-8, so
+    // fields can be cut on raw bytes and only decoded once found.
+    private static void parse(ByteBuffer buffer, List<String[]> rows) {
+        int limit = buffer.limit();
+        byte[] scratch = new byte[256];
+        String[] fields = new String[FIELDS];
+        int field = 0;
+        int start = 0;
+        for (int i = 0; i <= limit; i++) {
+            byte b = i < limit ? buffer.get(i) : (byte) '\n';
+            if (b != ',' && b != '\n') {
+                continue;
+            }
+            int end = i;
+            if (b == '\n' && end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            if (field < FIELDS) {
+                int len = end - start;
+                if (scratch.length < len) {
+                    scratch = new byte[Math.max(len, scratch.length * 2)];
+                }
+                buffer.get(start, scratch, 0, len);
+                fields[field] = new String(scratch, 0, len, StandardCharsets.UTF_8);
+            }
+            field++;
+            start = i + 1;
+            if (b == '\n') {
+                // Blank or short lines are skipped rather than failing the load
+                if (field >= FIELDS) {
+                    rows.add(fields);
+                    fields = new String[FIELDS];
+                }
+                field = 0;
+            }
+        }
+    }
+
+    // Compares cold-load time against the BufferedReader + split loader:
+    //   java StudentFileLoader students.txt
+    public static void main(String[] args) throws IOException {
+        String fileName = args.length > 0 ? args[0] : "students.txt";
+        for (int run = 1; run <= 3; run++) {
+            long t0 = System.nanoTime();
+            List<String[]> splitRows = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    splitRows.add(line.split(","));
+                }
+            }
+            long t1 = System.nanoTime();
+            int mappedRows = load(fileName).size();
+            long t2 = System.nanoTime();
+            System.out.printf("Run %d: split %d rows in %d ms, mapped %d rows in %d ms%n",
+                    run, splitRows.size(), (t1 - t0) / 1_000_000, mappedRows, (t2 - t1) / 1_000_000);
+        }
+    }
+}
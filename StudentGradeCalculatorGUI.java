@@ -1,24 +1,184 @@
 import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// One row per subject. JTable only renders the rows on screen, so hundreds
+// of subjects open as fast as a handful, and the totals are adjusted as
+// each mark is entered instead of being worked out again on Calculate.
+class MarkTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"Subject", "Marks"};
+
+    private final GradingPolicy.Lookup lookup;
+    private final int[] marks;
+    private int total;
+    private int weightedTotal;
+    private int entered;
+    private Runnable onChanged = () -> { };
+
+    public MarkTableModel(GradingPolicy.Lookup lookup) {
+        this.lookup = lookup;
+        marks = new int[lookup.subjects()];
+        Arrays.fill(marks, MarkStore.MISSING);
+    }
+
+    public void setChangeListener(Runnable onChanged) {
+        this.onChanged = onChanged;
+    }
+
+    @Override
+    public int getRowCount() {
+        return marks.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return column == 1;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) {
+            return "Subject " + (row + 1);
+        }
+        return marks[row] == MarkStore.MISSING ? "" : String.valueOf(marks[row]);
+    }
+
+    // The editor has already checked the text
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        String text = value.toString().trim();
+        setMark(row, text.isEmpty() ? MarkStore.MISSING : GradeCalculator.parseMark(text));
+        fireTableCellUpdated(row, column);
+        onChanged.run();
+    }
+
+    private void setMark(int subject, int mark) {
+        int old = marks[subject];
+        if (old != MarkStore.MISSING) {
+            total -= old;
+            weightedTotal -= lookup.weight(subject) * old;
+            entered--;
+        }
+        if (mark != MarkStore.MISSING) {
+            total += mark;
+            weightedTotal += lookup.weight(subject) * mark;
+            entered++;
+        }
+        marks[subject] = mark;
+    }
+
+    public void setMarks(int[] newMarks) {
+        for (int s = 0; s < marks.length; s++) {
+            setMark(s, newMarks[s]);
+        }
+        fireTableDataChanged();
+        onChanged.run();
+    }
+
+    public void clear() {
+        int[] blank = new int[marks.length];
+        Arrays.fill(blank, MarkStore.MISSING);
+        setMarks(blank);
+    }
+
+    public int[] getMarks() {
+        return marks.clone();
+    }
+
+    public int getMark(int subject) {
+        return marks[subject];
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getWeightedTotal() {
+        return weightedTotal;
+    }
+
+    public int getEntered() {
+        return entered;
+    }
+
+    // First subject without a mark, or -1
+    public int firstMissing() {
+        for (int s = 0; s < marks.length; s++) {
+            if (marks[s] == MarkStore.MISSING) {
+                return s;
+            }
+        }
+        return -1;
+    }
+}
 
 public class StudentGradeCalculatorGUI extends JFrame {
 
-    private JTextField[] markFields;
+    private MarkTableModel markModel;
+    private JTable markTable;
+    private JLabel summaryLabel;
+    private JTextField rollField;
+    private JButton loadButton;
     private JTextArea resultArea;
     private JButton calculateButton, resetButton, exitButton;
     private int numSubjects;
     private JPanel inputPanel;
     private JScrollPane scrollPane;
+    private final GradingPolicy policy;
+    private GradingPolicy.Lookup lookup;
+    private GradeCalculator calculator;
+
+    // Marks are kept per roll number in marks.dat, and the grade is written
+    // back to the student's record in students.txt
+    private MarkStore markStore;
+    // Journaled, so saving a grade appends one line instead of rewriting students.txt
+    private final StudentRepository repository = new StudentRepository("students.txt", true);
+    private final CompletableFuture<Void> rosterLoaded =
+            CompletableFuture.runAsync(() -> repository.load(count -> { }));
 
     public StudentGradeCalculatorGUI() {
+        this(GradingPolicy.standard());
+    }
+
+    public StudentGradeCalculatorGUI(GradingPolicy policy) {
+        this.policy = policy;
         setTitle("Student Grade Calculator - Swing Edition");
         setSize(600, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null); // Center the window
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeStores();
+            }
+        });
 
         initializeMenuBar();
-        getSubjectCountFromUser();
+        // A policy with weights already says how many subjects there are
+        if (policy.subjects() > 0) {
+            numSubjects = policy.subjects();
+        } else {
+            getSubjectCountFromUser();
+        }
+        lookup = policy.compile(numSubjects);
+        calculator = new GradeCalculator(lookup);
+        openMarkStore();
         initializeComponents();
         layoutComponents();
         addActionListeners();
@@ -29,7 +189,7 @@ public class StudentGradeCalculatorGUI extends JFrame {
         JMenu fileMenu = new JMenu("File");
 
         JMenuItem exitMenuItem = new JMenuItem("Exit");
-        exitMenuItem.addActionListener(e -> System.exit(0));
+        exitMenuItem.addActionListener(e -> exitApplication());
 
         fileMenu.add(exitMenuItem);
         menuBar.add(fileMenu);
@@ -59,20 +219,41 @@ public class StudentGradeCalculatorGUI extends JFrame {
         }
     }
 
+    private void openMarkStore() {
+        try {
+            markStore = new MarkStore("marks.dat", lookup);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Marks will not be saved: " + e.getMessage(),
+                    "Marks File",
+                    JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
     private void initializeComponents() {
-        inputPanel = new JPanel();
-        inputPanel.setLayout(new BoxLayout(inputPanel, BoxLayout.Y_AXIS));
-        markFields = new JTextField[numSubjects];
+        inputPanel = new JPanel(new BorderLayout());
 
-        for (int i = 0; i < numSubjects; i++) {
-            JPanel row = new JPanel(new FlowLayout(FlowLayout.LEFT));
-            JLabel label = new JLabel("Marks for Subject " + (i + 1) + ": ");
-            label.setPreferredSize(new Dimension(150, 25));
-            markFields[i] = new JTextField(10);
-            row.add(label);
-            row.add(markFields[i]);
-            inputPanel.add(row);
-        }
+        JPanel rollRow = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JLabel rollLabel = new JLabel("Roll Number: ");
+        rollLabel.setPreferredSize(new Dimension(150, 25));
+        rollField = new JTextField(10);
+        loadButton = new JButton("Load Marks");
+        rollRow.add(rollLabel);
+        rollRow.add(rollField);
+        rollRow.add(loadButton);
+        inputPanel.add(rollRow, BorderLayout.NORTH);
+
+        markModel = new MarkTableModel(lookup);
+        markTable = new JTable(markModel);
+        markTable.setRowHeight(25);
+        markTable.putClientProperty("terminateEditOnFocusLost", Boolean.TRUE);
+        markTable.getColumnModel().getColumn(1).setCellEditor(new MarkEditor());
+        inputPanel.add(new JScrollPane(markTable), BorderLayout.CENTER);
+
+        summaryLabel = new JLabel();
+        inputPanel.add(summaryLabel, BorderLayout.SOUTH);
+        markModel.setChangeListener(this::updateSummary);
+        updateSummary();
 
         resultArea = new JTextArea(10, 50);
         resultArea.setEditable(false);
@@ -104,71 +285,179 @@ public class StudentGradeCalculatorGUI extends JFrame {
     private void addActionListeners() {
         calculateButton.addActionListener(e -> calculateGrade());
         resetButton.addActionListener(e -> resetFields());
-        exitButton.addActionListener(e -> System.exit(0));
+        exitButton.addActionListener(e -> exitApplication());
+        loadButton.addActionListener(e -> loadMarks());
+        rollField.addActionListener(e -> loadMarks());
     }
 
-    private void calculateGrade() {
-        int total = 0;
-        boolean error = false;
-        StringBuilder details = new StringBuilder("Subject-wise Marks:\n");
+    // Checks a mark as the cell is left; a bad one keeps the cell open
+    private class MarkEditor extends DefaultCellEditor {
+        private static final long serialVersionUID = 1L;
 
-        for (int i = 0; i < numSubjects; i++) {
-            String input = markFields[i].getText().trim();
-            try {
-                int mark = Integer.parseInt(input);
-                if (mark < 0 || mark > 100) {
-                    throw new IllegalArgumentException();
+        MarkEditor() {
+            super(new JTextField());
+        }
+
+        @Override
+        public boolean stopCellEditing() {
+            JTextField field = (JTextField) getComponent();
+            String text = field.getText().trim();
+            int subject = markTable.getEditingRow() + 1;
+            String problem = null;
+            if (!text.isEmpty()) {
+                try {
+                    GradeCalculator.parseMark(text);
+                } catch (NumberFormatException nfe) {
+                    problem = "Please enter a valid number in Subject " + subject;
+                } catch (IllegalArgumentException iae) {
+                    problem = "Marks for Subject " + subject + " should be between 0 and 100.";
                 }
-                total += mark;
-                details.append("Subject ").append(i + 1).append(": ").append(mark).append("\n");
-            } catch (NumberFormatException nfe) {
-                JOptionPane.showMessageDialog(this,
-                        "Please enter a valid number in Subject " + (i + 1),
-                        "Invalid Input",
-                        JOptionPane.ERROR_MESSAGE);
-                error = true;
-                break;
-            } catch (IllegalArgumentException iae) {
-                JOptionPane.showMessageDialog(this,
-                        "Marks for Subject " + (i + 1) + " should be between 0 and 100.",
-                        "Range Error",
-                        JOptionPane.WARNING_MESSAGE);
-                error = true;
-                break;
             }
+            if (problem != null) {
+                field.setBorder(BorderFactory.createLineBorder(Color.RED));
+                summaryLabel.setForeground(Color.RED);
+                summaryLabel.setText(problem);
+                return false;
+            }
+            field.setBorder(BorderFactory.createLineBorder(Color.BLACK));
+            return super.stopCellEditing();
+        }
+    }
+
+    // Running figures from the model, no fields re-read
+    private void updateSummary() {
+        int entered = markModel.getEntered();
+        summaryLabel.setForeground(Color.BLACK);
+        summaryLabel.setText(String.format(" Entered %d of %d, total so far: %d%s", entered, numSubjects,
+                markModel.getTotal(), entered == numSubjects
+                        ? String.format(", average: %.2f%%", lookup.average(markModel.getWeightedTotal())) : ""));
+    }
+
+    // Fills the table with the marks saved for the roll number
+    private void loadMarks() {
+        String roll = rollField.getText().trim();
+        if (roll.isEmpty() || markStore == null) {
+            return;
+        }
+        int[] marks = markStore.marks(roll);
+        if (marks == null) {
+            resultArea.setText("No saved marks for roll number " + roll + ".");
+            return;
         }
+        markModel.setMarks(marks);
+        resultArea.setText("Loaded saved marks for roll number " + roll + ".");
+    }
 
-        if (!error) {
-            double average = (double) total / numSubjects;
-            String grade = getGrade(average);
-            details.append("\nTotal Marks: ").append(total);
-            details.append("\nAverage Percentage: ").append(String.format("%.2f", average)).append("%");
-            details.append("\nGrade: ").append(grade);
-            details.append("\nStatus: ").append(grade.equals("F") ? "Fail" : "Pass");
+    private void calculateGrade() {
+        // A mark still being typed counts, if it is valid
+        if (markTable.isEditing() && !markTable.getCellEditor().stopCellEditing()) {
+            return;
+        }
+        int missing = markModel.firstMissing();
+        if (missing >= 0) {
+            JOptionPane.showMessageDialog(this,
+                    "Please enter a valid number in Subject " + (missing + 1),
+                    "Invalid Input",
+                    JOptionPane.ERROR_MESSAGE);
+            markTable.changeSelection(missing, 1, false, false);
+            markTable.editCellAt(missing, 1);
+            return;
+        }
 
-            resultArea.setText(details.toString());
+        StringBuilder details = new StringBuilder("Subject-wise Marks:\n");
+        for (int i = 0; i < numSubjects; i++) {
+            details.append("Subject ").append(i + 1).append(": ").append(markModel.getMark(i)).append("\n");
         }
+        GradeCalculator.Result result = calculator.calculate(markModel.getTotal(), markModel.getWeightedTotal());
+        details.append("\nTotal Marks: ").append(result.total);
+        details.append("\nAverage Percentage: ").append(String.format("%.2f", result.average)).append("%");
+        details.append("\nGrading Policy: ").append(policy.getName());
+        details.append("\nGrade: ").append(result.grade);
+        details.append("\nStatus: ").append(result.passed ? "Pass" : "Fail");
+
+        resultArea.setText(details.toString());
+        saveMarks(markModel.getMarks());
     }
 
-    private String getGrade(double average) {
-        if (average >= 90) return "A+";
-        else if (average >= 80) return "A";
-        else if (average >= 70) return "B";
-        else if (average >= 60) return "C";
-        else if (average >= 50) return "D";
-        else return "F";
+    // Saves the marks under the roll number, if one was entered, and puts
+    // the grade on the student's record
+    private void saveMarks(int[] marks) {
+        String roll = rollField.getText().trim();
+        if (roll.isEmpty() || markStore == null) {
+            return;
+        }
+        String grade;
+        try {
+            grade = markStore.setMarks(roll, marks);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Error saving marks to file.",
+                    "Save Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        resultArea.append("\n\nMarks saved for roll number " + roll + ".");
+        rosterLoaded.thenCompose(v -> repository.updateGrade(roll, grade))
+                .whenComplete((found, failure) -> SwingUtilities.invokeLater(() -> {
+                    if (failure != null) {
+                        resultArea.append("\nError saving the grade to the student record.");
+                    } else if (found) {
+                        resultArea.append("\nStudent record updated with grade " + grade + ".");
+                    } else {
+                        resultArea.append("\nNo student with this roll number in the student list.");
+                    }
+                }));
     }
 
     private void resetFields() {
-        for (JTextField field : markFields) {
-            field.setText("");
+        rollField.setText("");
+        if (markTable.isEditing()) {
+            markTable.getCellEditor().cancelCellEditing();
         }
+        markModel.clear();
         resultArea.setText("");
     }
 
+    private void exitApplication() {
+        closeStores();
+        System.exit(0);
+    }
+
+    // Waits for the grade write-back to reach the disk
+    private void closeStores() {
+        repository.close();
+        try {
+            if (markStore != null) {
+                markStore.close();
+            }
+        } catch (IOException e) {
+            // Every mark was written as it was entered
+        }
+    }
+
+    // Pass a policy name to grade with a scheme from grading.properties
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
-            StudentGradeCalculatorGUI gui = new StudentGradeCalculatorGUI();
+            GradingPolicy policy = GradingPolicy.standard();
+            if (args.length > 0) {
+                try {
+                    Map<String, GradingPolicy> policies = GradingPolicy.load("grading.properties");
+                    if (policies.containsKey(args[0])) {
+                        policy = policies.get(args[0]);
+                    } else {
+                        JOptionPane.showMessageDialog(null,
+                                "No grading policy named " + args[0] + ". Using the standard grades.",
+                                "Grading Policy",
+                                JOptionPane.WARNING_MESSAGE);
+                    }
+                } catch (IOException e) {
+                    JOptionPane.showMessageDialog(null,
+                            "Could not read grading.properties: " + e.getMessage() + "\nUsing the standard grades.",
+                            "Grading Policy",
+                            JOptionPane.WARNING_MESSAGE);
+                }
+            }
+            StudentGradeCalculatorGUI gui = new StudentGradeCalculatorGUI(policy);
             gui.setVisible(true);
         });
     }
@@ -1,124 +1,154 @@
 import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
 import java.util.*;
-
-class Student {
-    private String name;
-    private String roll;
-    private String grade;
-
-    public Student(String name, String roll, String grade) {
-        this.name = name;
-        this.roll = roll;
-        this.grade = grade;
-    }
-
-    public String getName() {
-        return name;
+import java.util.concurrent.*;
+
+// Table model that reads rows straight from the repository. JTable only asks
+// for the rows it is painting, so nothing is copied or turned into text.
+class StudentTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"Name", "Roll No", "Grade"};
+    private static final StudentRepository.SortKey[] SORT_KEYS = {
+            StudentRepository.SortKey.NAME, StudentRepository.SortKey.ROLL, StudentRepository.SortKey.GRADE};
+
+    private final StudentRepository repository;
+    private StudentRepository.SortKey sortKey = StudentRepository.SortKey.NONE;
+    // Stays empty until the repository has finished loading in the background
+    private boolean loaded;
+    // Search-as-you-type results; null while the whole roster is shown
+    private java.util.List<Student> filtered;
+    private java.util.List<Student> filteredSorted;
+
+    public StudentTableModel(StudentRepository repository) {
+        this.repository = repository;
     }
 
-    public String getRoll() {
-        return roll;
-    }
-
-    public String getGrade() {
-        return grade;
+    @Override
+    public int getRowCount() {
+        if (filtered != null) {
+            return filtered.size();
+        }
+        return loaded ? repository.size() : 0;
     }
 
-    public String toFileFormat() {
-        return name + "," + roll + "," + grade;
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
     }
 
-    public static Student fromFileFormat(String line) {
-        String[] parts = line.split(",");
-        return new Student(parts[0], parts[1], parts[2]);
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
     }
 
     @Override
-    public String toString() {
-        return "Name: " + name + ", Roll: " + roll + ", Grade: " + grade;
+    public Object getValueAt(int row, int column) {
+        Student s = filtered != null ? filteredView().get(row) : repository.getStudent(row, sortKey);
+        if (s == null) {
+            // Removed by the writer since the table last asked, or the sorted
+            // copy is still being built; a refresh is on its way either way
+            return "";
+        }
+        return switch (column) {
+            case 0 -> s.getName();
+            case 1 -> s.getRollNumber();
+            default -> s.getGrade();
+        };
     }
-}
 
-class StudentManager {
-    private final String FILE = "students.txt";
-    private java.util.List<Student> students = new ArrayList<>();
-
-    public StudentManager() {
-        loadFromFile();
+    // Clicking the same column again goes back to insertion order
+    public void sortByColumn(int column) {
+        sortKey = sortKey == SORT_KEYS[column] ? StudentRepository.SortKey.NONE : SORT_KEYS[column];
+        filteredSorted = null;
+        fireTableDataChanged();
     }
 
-    public void addStudent(Student s) {
-        students.add(s);
-        saveToFile();
+    public int rowOf(Student s) {
+        return filtered != null ? filteredView().indexOf(s) : repository.indexOf(s, sortKey);
     }
 
-    public boolean removeStudent(String roll) {
-        for (Student s : students) {
-            if (s.getRoll().equalsIgnoreCase(roll)) {
-                students.remove(s);
-                saveToFile();
-                return true;
-            }
-        }
-        return false;
+    public void setFilter(java.util.List<Student> results) {
+        filtered = results;
+        filteredSorted = null;
+        fireTableDataChanged();
     }
 
-    public Student searchStudent(String roll) {
-        for (Student s : students) {
-            if (s.getRoll().equalsIgnoreCase(roll)) {
-                return s;
-            }
-        }
-        return null;
+    public void clearFilter() {
+        filtered = null;
+        filteredSorted = null;
     }
 
-    public String displayAllStudents() {
-        StringBuilder sb = new StringBuilder();
-        for (Student s : students) {
-            sb.append(s).append("\n");
+    // Results are few, so they are simply sorted on demand
+    private java.util.List<Student> filteredView() {
+        if (sortKey == StudentRepository.SortKey.NONE) {
+            return filtered;
         }
-        return sb.toString().isEmpty() ? "No student data." : sb.toString();
+        if (filteredSorted == null) {
+            filteredSorted = new ArrayList<>(filtered);
+            filteredSorted.sort(StudentRepository.comparator(sortKey));
+        }
+        return filteredSorted;
     }
 
-    private void saveToFile() {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(FILE))) {
-            for (Student s : students) {
-                bw.write(s.toFileFormat());
-                bw.newLine();
-            }
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error saving data.");
-        }
+    public void setLoaded() {
+        loaded = true;
+        fireTableDataChanged();
     }
 
-    private void loadFromFile() {
-        try (BufferedReader br = new BufferedReader(new FileReader(FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                students.add(Student.fromFileFormat(line));
-            }
-        } catch (IOException e) {
-            // First run, file might not exist
-        }
+    public void refresh() {
+        fireTableDataChanged();
     }
 }
 
 public class StudentManagementGUI extends JFrame {
+    private static final int SEARCH_LIMIT = 500;
+    private static final int SEARCH_DELAY_MS = 150;
+    private static final int REFRESH_MS = 2000;
+
     private JTextField nameField, rollField, gradeField, searchField;
-    private JTextArea displayArea;
-    private StudentManager manager = new StudentManager();
+    private JTable table;
+    private StudentTableModel tableModel;
+    private JLabel statusLabel, edtLabel;
+    private JProgressBar loadProgress;
+    private java.util.List<JComponent> controls = new ArrayList<>();
+    private EdtLatencyProbe edtProbe = new EdtLatencyProbe();
+    private StudentRepository repository;
+
+    // Search-as-you-type: the timer waits for a pause in typing, then the
+    // query runs on its own thread. Each query gets a generation number and
+    // only the newest one may update the table.
+    private javax.swing.Timer searchDelay;
+    private ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "student-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> pendingSearch;
+    private int searchGeneration;
 
     public StudentManagementGUI() {
+        this(false);
+    }
+
+    public StudentManagementGUI(boolean journaled) {
+        repository = new StudentRepository("students.txt", journaled);
         setTitle("Student Management System");
         setSize(500, 500);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                repository.close();
+                System.err.println("Longest EDT stall: " + edtProbe.getMaxMillis() + " ms");
+            }
+        });
         setLayout(new BorderLayout());
 
         // Input Panel
-        JPanel inputPanel = new JPanel(new GridLayout(4, 2));
+        JPanel inputPanel = new JPanel(new GridLayout(5, 2));
         inputPanel.add(new JLabel("Name:"));
         nameField = new JTextField();
         inputPanel.add(nameField);
@@ -133,34 +163,141 @@ public class StudentManagementGUI extends JFrame {
 
         JButton addBtn = new JButton("Add Student");
         inputPanel.add(addBtn);
+        controls.add(addBtn);
         addBtn.addActionListener(e -> addStudent());
 
         JButton removeBtn = new JButton("Remove by Roll");
         inputPanel.add(removeBtn);
+        controls.add(removeBtn);
         removeBtn.addActionListener(e -> removeStudent());
 
+        JButton importBtn = new JButton("Import...");
+        inputPanel.add(importBtn);
+        controls.add(importBtn);
+        importBtn.addActionListener(e -> runBatch(true));
+
+        JButton exportBtn = new JButton("Export...");
+        inputPanel.add(exportBtn);
+        controls.add(exportBtn);
+        exportBtn.addActionListener(e -> runBatch(false));
+
         add(inputPanel, BorderLayout.NORTH);
 
-        // Display Area
-        displayArea = new JTextArea();
-        displayArea.setEditable(false);
-        add(new JScrollPane(displayArea), BorderLayout.CENTER);
+        // Student Table, sorted by clicking a column header
+        tableModel = new StudentTableModel(repository);
+        table = new JTable(tableModel);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    tableModel.sortByColumn(table.convertColumnIndexToModel(column));
+                }
+            }
+        });
+        add(new JScrollPane(table), BorderLayout.CENTER);
 
         // Search Panel
         JPanel searchPanel = new JPanel();
-        searchPanel.add(new JLabel("Search Roll:"));
+        searchPanel.add(new JLabel("Search Roll/Name:"));
         searchField = new JTextField(10);
         searchPanel.add(searchField);
+        controls.add(searchField);
+        searchDelay = new javax.swing.Timer(SEARCH_DELAY_MS, e -> incrementalSearch());
+        searchDelay.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                searchDelay.restart();
+            }
+
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                searchDelay.restart();
+            }
+
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                searchDelay.restart();
+            }
+        });
 
         JButton searchBtn = new JButton("Search");
         searchPanel.add(searchBtn);
+        controls.add(searchBtn);
         searchBtn.addActionListener(e -> searchStudent());
 
         JButton showAllBtn = new JButton("Show All");
         searchPanel.add(showAllBtn);
+        controls.add(showAllBtn);
         showAllBtn.addActionListener(e -> showAllStudents());
 
-        add(searchPanel, BorderLayout.SOUTH);
+        // Status Bar
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusLabel = new JLabel(" ");
+        edtLabel = new JLabel(" ");
+        loadProgress = new JProgressBar();
+        loadProgress.setIndeterminate(true);
+        statusPanel.add(loadProgress, BorderLayout.WEST);
+        statusPanel.add(statusLabel, BorderLayout.CENTER);
+        statusPanel.add(edtLabel, BorderLayout.EAST);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(searchPanel, BorderLayout.CENTER);
+        southPanel.add(statusPanel, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
+
+        // Report how long the event thread was kept busy, once a second,
+        // and log any single stall long enough for a user to notice
+        edtProbe.setStallListener(100, millis -> System.err.println("EDT stalled for " + millis + " ms"));
+        edtProbe.start(10);
+        new javax.swing.Timer(1000, e -> edtLabel.setText(
+                "EDT last " + edtProbe.getLastMillis() + " ms, max " + edtProbe.getMaxMillis() + " ms")).start();
+
+        repository.setSaveListener(() -> SwingUtilities.invokeLater(() -> {
+            if (!repository.isSaving()) {
+                statusLabel.setText("All changes saved.");
+            }
+        }), e -> SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Error saving data.")));
+        repository.setChangeListener(() -> SwingUtilities.invokeLater(tableModel::refresh));
+        loadStudents();
+    }
+
+    // Loads the roster on a background thread with the controls disabled
+    private void loadStudents() {
+        for (JComponent c : controls) {
+            c.setEnabled(false);
+        }
+        statusLabel.setText("Loading students...");
+        new SwingWorker<Void, Integer>() {
+            @Override
+            protected Void doInBackground() {
+                repository.load(this::publish);
+                return null;
+            }
+
+            @Override
+            protected void process(java.util.List<Integer> counts) {
+                statusLabel.setText("Loading students... " + counts.get(counts.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                loadProgress.setVisible(false);
+                for (JComponent c : controls) {
+                    c.setEnabled(true);
+                }
+                tableModel.setLoaded();
+                showAllStudents();
+                // Pick up changes saved by other processes, such as the console app
+                new javax.swing.Timer(REFRESH_MS, e -> searchExecutor.execute(() -> {
+                    try {
+                        repository.refresh();
+                    } catch (IOException ex) {
+                        // Try again on the next tick
+                    }
+                })).start();
+            }
+        }.execute();
     }
 
     private void addStudent() {
@@ -173,10 +310,17 @@ public class StudentManagementGUI extends JFrame {
             return;
         }
 
-        manager.addStudent(new Student(name, roll, grade));
-        JOptionPane.showMessageDialog(this, "Student added.");
-        clearFields();
-        showAllStudents();
+        // The writer thread checks the roll and saves; we hear back on the EDT.
+        // Save errors are reported by the save listener.
+        repository.addStudent(new Student(name, roll, grade)).thenAccept(added -> SwingUtilities.invokeLater(() -> {
+            if (!added) {
+                JOptionPane.showMessageDialog(this, "A student with that roll number already exists.");
+                return;
+            }
+            JOptionPane.showMessageDialog(this, "Student added.");
+            clearFields();
+            showAllStudents();
+        }));
     }
 
     private void removeStudent() {
@@ -186,13 +330,47 @@ public class StudentManagementGUI extends JFrame {
             return;
         }
 
-        if (manager.removeStudent(roll)) {
-            JOptionPane.showMessageDialog(this, "Student removed.");
-        } else {
-            JOptionPane.showMessageDialog(this, "Student not found.");
+        repository.removeStudent(roll).thenAccept(removed -> SwingUtilities.invokeLater(() -> {
+            JOptionPane.showMessageDialog(this, removed ? "Student removed." : "Student not found.");
+            clearFields();
+            showAllStudents();
+        }));
+    }
+
+    // Imports or exports a CSV or .dat file in the background with the
+    // controls disabled; rejected import rows go to import-report.txt
+    private void runBatch(boolean importing) {
+        JFileChooser chooser = new JFileChooser(".");
+        int choice = importing ? chooser.showOpenDialog(this) : chooser.showSaveDialog(this);
+        if (choice != JFileChooser.APPROVE_OPTION) {
+            return;
         }
-        clearFields();
-        showAllStudents();
+        String file = chooser.getSelectedFile().getPath();
+        for (JComponent c : controls) {
+            c.setEnabled(false);
+        }
+        statusLabel.setText(importing ? "Importing..." : "Exporting...");
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws IOException {
+                StudentBatch batch = new StudentBatch(repository);
+                return importing ? batch.importFile(file, "import-report.txt") : batch.exportFile(file);
+            }
+
+            @Override
+            protected void done() {
+                for (JComponent c : controls) {
+                    c.setEnabled(true);
+                }
+                tableModel.clearFilter();
+                tableModel.refresh();
+                try {
+                    statusLabel.setText(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    statusLabel.setText("Error: " + e.getCause().getMessage());
+                }
+            }
+        }.execute();
     }
 
     private void searchStudent() {
@@ -202,16 +380,48 @@ public class StudentManagementGUI extends JFrame {
             return;
         }
 
-        Student s = manager.searchStudent(roll);
+        Student s = repository.searchStudent(roll);
         if (s != null) {
-            displayArea.setText(s.toString());
+            int row = tableModel.rowOf(s);
+            if (row >= 0) {
+                table.setRowSelectionInterval(row, row);
+                table.scrollRectToVisible(table.getCellRect(row, 0, true));
+            }
+            statusLabel.setText("Student found: " + s);
         } else {
-            displayArea.setText("Student not found.");
+            statusLabel.setText("Student not found.");
+        }
+    }
+
+    private void incrementalSearch() {
+        String text = searchField.getText().trim();
+        int generation = ++searchGeneration;
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true);
+        }
+        if (text.isEmpty()) {
+            showAllStudents();
+            return;
         }
+        pendingSearch = searchExecutor.submit(() -> {
+            long start = System.nanoTime();
+            java.util.List<Student> results = repository.searchPrefix(text, SEARCH_LIMIT);
+            long micros = (System.nanoTime() - start) / 1000;
+            SwingUtilities.invokeLater(() -> {
+                if (generation != searchGeneration) {
+                    return;
+                }
+                tableModel.setFilter(results);
+                statusLabel.setText((results.size() >= SEARCH_LIMIT ? "First " : "") + results.size()
+                        + " matches for \"" + text + "\" (" + micros + " us)");
+            });
+        });
     }
 
     private void showAllStudents() {
-        displayArea.setText(manager.displayAllStudents());
+        tableModel.clearFilter();
+        tableModel.refresh();
+        statusLabel.setText(repository.size() == 0 ? "No student data." : repository.size() + " students");
     }
 
     private void clearFields() {
@@ -222,6 +432,8 @@ public class StudentManagementGUI extends JFrame {
     }
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new StudentManagementGUI().setVisible(true));
+        // Pass --journal to append changes to a log instead of rewriting the file
+        boolean journaled = args.length > 0 && args[0].equals("--journal");
+        SwingUtilities.invokeLater(() -> new StudentManagementGUI(journaled).setVisible(true));
     }
 }
\ No newline at end of file
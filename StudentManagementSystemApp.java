@@ -1,143 +1,145 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-class Student {
-    private String name;
-    private String rollNumber;
-    private String grade;
-
-    public Student(String name, String rollNumber, String grade) {
-        this.name = name;
-        this.rollNumber = rollNumber;
-        this.grade = grade;
-    }
-
-    public String getName() {
-        return name;
-    }
-
-    public String getRollNumber() {
-        return rollNumber;
-    }
-
-    public String getGrade() {
-        return grade;
-    }
-
-    public void setName(String name) {
-        this.name = name;
-    }
-
-    public void setGrade(String grade) {
-        this.grade = grade;
-    }
-
-    @Override
-    public String toString() {
-        return "Name: " + name + ", Roll No: " + rollNumber + ", Grade: " + grade;
-    }
-
-    public String toFileFormat() {
-        return name + "," + rollNumber + "," + grade;
-    }
-
-    public static Student fromFileFormat(String line) {
-        String[] parts = line.split(",");
-        return new Student(parts[0], parts[1], parts[2]);
-    }
-}
+public class StudentManagementSystemApp {
+    private static final String FILE_NAME = "students.txt";
+    private static final int PAGE_SIZE = 20;
+    private static final int STREAM_PAGE_SIZE = 4096;
+    private static Scanner scanner = new Scanner(System.in);
+    private static StudentRepository repository;
+    private static StudentPrinter printer = StudentPrinter.toStdout();
 
-class StudentManagementSystem {
-    private List<Student> students = new ArrayList<>();
-    private final String FILE_NAME = "students.txt";
+    public static void main(String[] args) {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        // Pass --journal to append changes to a log instead of rewriting the file
+        repository = new StudentRepository(FILE_NAME, options.remove("--journal"));
+        repository.load(count -> { });
+        // Bulk modes: --import students.csv [report.txt] or --export roster.csv
+        if (options.size() >= 2 && (options.get(0).equals("--import") || options.get(0).equals("--export"))) {
+            StudentBatch batch = new StudentBatch(repository);
+            try {
+                System.out.println(options.get(0).equals("--import")
+                        ? batch.importFile(options.get(1), options.size() >= 3 ? options.get(2) : "import-report.txt")
+                        : batch.exportFile(options.get(1)));
+            } catch (IOException e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+            repository.close();
+            return;
+        }
+        // Streams the whole roster for piping: --list [name|roll|grade] [text]
+        if (options.size() >= 1 && options.get(0).equals("--list")) {
+            listAll(options.size() >= 2 ? options.get(1) : "", options.size() >= 3 ? options.get(2) : "");
+            repository.close();
+            return;
+        }
+        int choice;
+        do {
+            System.out.println("\nSTUDENT MANAGEMENT SYSTEM");
+            System.out.println("1. Add Student");
+            System.out.println("2. Remove Student");
+            System.out.println("3. Search Student");
+            System.out.println("4. Search by Name");
+            System.out.println("5. List by Grade");
+            System.out.println("6. Display All Students");
+            System.out.println("7. Exit");
+            System.out.print("Enter your choice: ");
+            choice = getIntInput();
+            refresh();
 
-    public StudentManagementSystem() {
-        loadFromFile();
+            switch (choice) {
+                case 1 -> addStudentUI();
+                case 2 -> removeStudentUI();
+                case 3 -> searchStudentUI();
+                case 4 -> searchByNameUI();
+                case 5 -> listByGradeUI();
+                case 6 -> displayAllStudents();
+                case 7 -> System.out.println("Exiting...");
+                default -> System.out.println("Invalid choice.");
+            }
+        } while (choice != 7);
+        repository.close();
     }
 
-    public void addStudent(Student student) {
-        students.add(student);
-        saveToFile();
+    // Picks up changes saved by another process, such as the GUI
+    private static void refresh() {
+        try {
+            repository.refresh();
+        } catch (IOException e) {
+            System.out.println("Error reading data from file.");
+        }
     }
 
-    public boolean removeStudent(String rollNumber) {
-        for (Student s : students) {
-            if (s.getRollNumber().equalsIgnoreCase(rollNumber)) {
-                students.remove(s);
-                saveToFile();
-                return true;
-            }
+    // Waits until the change is on disk and says how it went; false if it
+    // was rejected or could not be saved
+    private static boolean await(CompletableFuture<Boolean> change, String done, String rejected) {
+        try {
+            boolean applied = change.join();
+            System.out.println(applied ? done : rejected);
+            return applied;
+        } catch (CompletionException e) {
+            System.out.println("Error saving data to file.");
+            return false;
         }
-        return false;
     }
 
-    public Student searchStudent(String rollNumber) {
-        for (Student s : students) {
-            if (s.getRollNumber().equalsIgnoreCase(rollNumber)) {
-                return s;
+    // Shows the roster a page at a time, optionally sorted and filtered
+    private static void displayAllStudents() {
+        System.out.print("Sort by name, roll or grade (Enter for order added): ");
+        StudentRepository.SortKey sortKey = sortKey(scanner.nextLine());
+        System.out.print("Show only students containing (Enter for all): ");
+        StudentRepository.Cursor cursor = repository.cursor(sortKey, StudentRepository.containing(scanner.nextLine()));
+        Student[] page = new Student[PAGE_SIZE];
+        long shown = 0;
+        int n;
+        while ((n = cursor.next(page)) > 0) {
+            print(page, n);
+            shown += n;
+            if (!cursor.hasMore()) {
+                break;
+            }
+            System.out.print("-- " + shown + " shown, Enter for more, q to stop -- ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                break;
             }
         }
-        return null;
-    }
-
-    public void displayAllStudents() {
-        if (students.isEmpty()) {
+        if (shown == 0) {
             System.out.println("No student records found.");
-        } else {
-            for (Student s : students) {
-                System.out.println(s);
-            }
         }
     }
 
-    private void saveToFile() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME))) {
-            for (Student s : students) {
-                writer.write(s.toFileFormat());
-                writer.newLine();
-            }
+    // Writes every match to standard output in one stream; the count and
+    // time go to standard error so the output can be piped
+    private static void listAll(String sort, String text) {
+        long start = System.nanoTime();
+        try {
+            long count = printer.printAll(repository.cursor(sortKey(sort), StudentRepository.containing(text)),
+                    STREAM_PAGE_SIZE);
+            System.err.println("Listed " + count + " students in " + (System.nanoTime() - start) / 1_000_000 + " ms");
         } catch (IOException e) {
-            System.out.println("Error saving data to file.");
+            System.err.println("Error writing output: " + e.getMessage());
         }
     }
 
-    private void loadFromFile() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_NAME))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                students.add(Student.fromFileFormat(line));
-            }
-        } catch (IOException e) {
-            // File may not exist on first run
-        }
+    private static StudentRepository.SortKey sortKey(String text) {
+        return switch (text.trim().toLowerCase(Locale.ROOT)) {
+            case "name" -> StudentRepository.SortKey.NAME;
+            case "roll" -> StudentRepository.SortKey.ROLL;
+            case "grade" -> StudentRepository.SortKey.GRADE;
+            default -> StudentRepository.SortKey.NONE;
+        };
     }
-}
-
-public class StudentManagementSystemApp {
-    private static Scanner scanner = new Scanner(System.in);
-    private static StudentManagementSystem sms = new StudentManagementSystem();
 
-    public static void main(String[] args) {
-        int choice;
-        do {
-            System.out.println("\nSTUDENT MANAGEMENT SYSTEM");
-            System.out.println("1. Add Student");
-            System.out.println("2. Remove Student");
-            System.out.println("3. Search Student");
-            System.out.println("4. Display All Students");
-            System.out.println("5. Exit");
-            System.out.print("Enter your choice: ");
-            choice = getIntInput();
-
-            switch (choice) {
-                case 1 -> addStudentUI();
-                case 2 -> removeStudentUI();
-                case 3 -> searchStudentUI();
-                case 4 -> sms.displayAllStudents();
-                case 5 -> System.out.println("Exiting...");
-                default -> System.out.println("Invalid choice.");
-            }
-        } while (choice != 5);
+    private static void print(Student[] page, int count) {
+        System.out.flush();
+        try {
+            printer.print(page, count);
+            printer.flush();
+        } catch (IOException e) {
+            System.out.println("Error writing output.");
+        }
     }
 
     private static void addStudentUI() {
@@ -147,24 +149,20 @@ public class StudentManagementSystemApp {
         String roll = getNonEmptyString();
         System.out.print("Enter grade: ");
         String grade = getNonEmptyString();
-        sms.addStudent(new Student(name, roll, grade));
-        System.out.println("Student added.");
+        await(repository.addStudent(new Student(name, roll, grade)),
+                "Student added.", "A student with that roll number already exists.");
     }
 
     private static void removeStudentUI() {
         System.out.print("Enter roll number to remove: ");
         String roll = getNonEmptyString();
-        if (sms.removeStudent(roll)) {
-            System.out.println("Student removed.");
-        } else {
-            System.out.println("Student not found.");
-        }
+        await(repository.removeStudent(roll), "Student removed.", "Student not found.");
     }
 
     private static void searchStudentUI() {
         System.out.print("Enter roll number to search: ");
         String roll = getNonEmptyString();
-        Student s = sms.searchStudent(roll);
+        Student s = repository.searchStudent(roll);
         if (s != null) {
             System.out.println("Student found: " + s);
         } else {
@@ -172,6 +170,24 @@ public class StudentManagementSystemApp {
         }
     }
 
+    private static void searchByNameUI() {
+        System.out.print("Enter name or start of name: ");
+        printMatches(repository.searchByNamePrefix(getNonEmptyString()));
+    }
+
+    private static void listByGradeUI() {
+        System.out.print("Enter grade: ");
+        printMatches(repository.searchByGrade(getNonEmptyString()));
+    }
+
+    private static void printMatches(List<Student> matches) {
+        if (matches.isEmpty()) {
+            System.out.println("No matching students.");
+        } else {
+            print(matches.toArray(new Student[0]), matches.size());
+        }
+    }
+
     private static String getNonEmptyString() {
         String input;
         while ((input = scanner.nextLine()).trim().isEmpty()) {
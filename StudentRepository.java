@@ -0,0 +1,742 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+// The student roster shared by the console and Swing front ends.
+// Reads may come from any thread and never block writers: lookups and
+// searches walk concurrent maps without locking, and reads by position use an
+// optimistic StampedLock read. Writers take the lock exclusively, so a
+// change reaches every index as one step.
+//
+// Changes are queued to a single writer thread, which applies them and saves
+// them through a StudentStore in one locked step, so two processes on the
+// same files cannot lose each other's changes. A burst of changes is
+// applied and saved as one batch. Each change returns a future that
+// completes once it is on disk.
+class StudentRepository {
+    // Row orders the table can ask for
+    enum SortKey { NONE, NAME, ROLL, GRADE }
+
+    private static final int COMPACT_THRESHOLD = 1000;
+    // Students added per hold of the write lock during a bulk add
+    private static final int WRITE_CHUNK = 4096;
+    // Sorts before any character a name or grade can contain
+    private static final char SEPARATOR = '\0';
+
+    private final StudentStore store;
+    // Primary index: lower-cased roll -> student
+    private final ConcurrentHashMap<String, Student> students = new ConcurrentHashMap<>();
+    // Secondary indexes, sorted so searches are range scans. Name and grade
+    // keys end in the roll, which keeps every key unique.
+    private final ConcurrentSkipListMap<String, Student> rollIndex = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Student> nameIndex = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Student> gradeIndex = new ConcurrentSkipListMap<>();
+    // Held by writers for every change; guards rows
+    private final StampedLock lock = new StampedLock();
+    // Students in insertion order, for the table
+    private final RowOrder rows = new RowOrder();
+    // Bumped on every change, so cached sorted copies know when they are stale
+    private volatile long version;
+    private volatile SortedRows sortedRows;
+    // Sorted copies for the table are rebuilt here, one at a time, so a
+    // reader on the event thread never sorts
+    private final ExecutorService sorter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "student-sorter");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean sorting = new AtomicBoolean();
+    private volatile SortKey sortWanted = SortKey.NONE;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "student-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ConcurrentLinkedQueue<Change> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingChanges = new AtomicInteger();
+    private volatile Runnable onSaved = () -> { };
+    private volatile Consumer<IOException> onSaveError = e -> { };
+    private volatile Runnable onChanged = () -> { };
+
+    // Adds (students set), a remove (roll set) or a new grade (roll and
+    // grade set) waiting for the writer. The result is how many of them
+    // took effect.
+    private static final class Change {
+        final List<Student> students;
+        final String roll;
+        final String grade;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Change(List<Student> students, String roll, String grade) {
+            this.students = students;
+            this.roll = roll;
+            this.grade = grade;
+        }
+    }
+
+    // Students in insertion order with access by position in O(log n).
+    // Each student keeps the slot it was added in and a removal only empties
+    // its slot; a Fenwick tree counting the filled slots turns a position
+    // into a slot and back. Slots are packed once most of them are empty.
+    private static final class RowOrder {
+        private Student[] slots = new Student[16];
+        // 1-based: tree[i] counts the filled slots in a range ending at slot i - 1
+        private int[] tree = new int[17];
+        private int end;
+        private int size;
+        // Roll key -> slot
+        private final HashMap<String, Integer> slotOf = new HashMap<>();
+
+        int size() {
+            return size;
+        }
+
+        void add(String key, Student s) {
+            if (end == slots.length) {
+                pack(size * 2 > slots.length ? slots.length * 2 : slots.length);
+            }
+            slots[end] = s;
+            slotOf.put(key, end);
+            update(end, 1);
+            end++;
+            size++;
+        }
+
+        void remove(String key) {
+            Integer slot = slotOf.remove(key);
+            if (slot != null) {
+                slots[slot] = null;
+                update(slot, -1);
+                size--;
+            }
+        }
+
+        // Same position, new record
+        void replace(String key, Student s) {
+            Integer slot = slotOf.get(key);
+            if (slot != null) {
+                slots[slot] = s;
+            }
+        }
+
+        // Walks down the tree to the slot holding the row'th student. Safe to
+        // call under an optimistic read: it only ever reads arrays in bounds
+        // or throws, and takes at most log2(capacity) steps.
+        Student get(int row) {
+            Student[] s = slots;
+            int[] t = tree;
+            if (row < 0 || row >= size) {
+                return null;
+            }
+            int slot = 0;
+            int remaining = row + 1;
+            for (int step = Integer.highestOneBit(s.length); step > 0; step >>= 1) {
+                int next = slot + step;
+                if (next < t.length && t[next] < remaining) {
+                    slot = next;
+                    remaining -= t[next];
+                }
+            }
+            return s[slot];
+        }
+
+        // Students before it in the order, or -1
+        int indexOf(String key, Student s) {
+            Integer slot = slotOf.get(key);
+            if (slot == null || slots[slot] != s) {
+                return -1;
+            }
+            int count = 0;
+            for (int i = slot; i > 0; i -= i & -i) {
+                count += tree[i];
+            }
+            return count;
+        }
+
+        Student[] toArray() {
+            Student[] all = new Student[size];
+            int n = 0;
+            for (int i = 0; i < end; i++) {
+                if (slots[i] != null) {
+                    all[n++] = slots[i];
+                }
+            }
+            return all;
+        }
+
+        void clear() {
+            slots = new Student[16];
+            tree = new int[17];
+            end = 0;
+            size = 0;
+            slotOf.clear();
+        }
+
+        private void update(int slot, int delta) {
+            for (int i = slot + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        // Moves the students to the front of new arrays and rebuilds the
+        // tree in one pass. New arrays, so an optimistic reader never sees
+        // half-moved slots.
+        private void pack(int capacity) {
+            Student[] packed = new Student[capacity];
+            int[] counts = new int[capacity + 1];
+            int n = 0;
+            for (int i = 0; i < end; i++) {
+                if (slots[i] != null) {
+                    packed[n] = slots[i];
+                    slotOf.put(key(slots[i].getRollNumber()), n);
+                    counts[++n]++;
+                }
+            }
+            for (int i = 1; i <= capacity; i++) {
+                int parent = i + (i & -i);
+                if (parent <= capacity) {
+                    counts[parent] += counts[i];
+                }
+            }
+            tree = counts;
+            slots = packed;
+            end = n;
+        }
+    }
+
+    private static final class SortedRows {
+        final SortKey sortKey;
+        final long version;
+        final Student[] rows;
+
+        SortedRows(SortKey sortKey, long version, Student[] rows) {
+            this.sortKey = sortKey;
+            this.version = version;
+            this.rows = rows;
+        }
+    }
+
+    // Call load() before use; it is kept out of the constructor so it can
+    // run on a background thread
+    public StudentRepository(String fileName, boolean journaled) {
+        store = new StudentStore(fileName, journaled, COMPACT_THRESHOLD);
+    }
+
+    // Callbacks run on the writer thread after each batch is saved or fails
+    public void setSaveListener(Runnable onSaved, Consumer<IOException> onSaveError) {
+        this.onSaved = onSaved;
+        this.onSaveError = onSaveError;
+    }
+
+    // Runs on the writer or refreshing thread whenever the roster changed,
+    // including changes made by another process, and on the sorter thread
+    // when a new sorted copy is ready
+    public void setChangeListener(Runnable onChanged) {
+        this.onChanged = onChanged;
+    }
+
+    public boolean isSaving() {
+        return pendingChanges.get() > 0;
+    }
+
+    // Completes with false if the roll number is taken
+    public CompletableFuture<Boolean> addStudent(Student s) {
+        return submit(new Change(List.of(s), null, null)).thenApply(added -> added > 0);
+    }
+
+    // Adds many students in one commit, skipping rolls that are taken.
+    // Completes with the number added.
+    public CompletableFuture<Integer> addAll(List<Student> students) {
+        return submit(new Change(students, null, null));
+    }
+
+    // Completes with false if there is no such student
+    public CompletableFuture<Boolean> removeStudent(String roll) {
+        return submit(new Change(null, roll, null)).thenApply(removed -> removed > 0);
+    }
+
+    // Replaces the student's grade, as worked out from their marks.
+    // Completes with false if there is no such student.
+    public CompletableFuture<Boolean> updateGrade(String roll, String grade) {
+        return submit(new Change(null, roll, grade)).thenApply(found -> found > 0);
+    }
+
+    private CompletableFuture<Integer> submit(Change change) {
+        pendingChanges.incrementAndGet();
+        queue.add(change);
+        writer.execute(this::drain);
+        return change.result;
+    }
+
+    // Reads the roster from disk, reporting the number of students loaded so far
+    public void load(IntConsumer progress) {
+        int[] count = {0};
+        try {
+            store.load(new Indexer() {
+                @Override
+                public void add(String[] fields) {
+                    super.add(fields);
+                    if (++count[0] % 50_000 == 0) {
+                        progress.accept(count[0]);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // Unreadable file, start with an empty roster
+        }
+        progress.accept(count[0]);
+    }
+
+    // Picks up changes other processes have saved. Returns true if anything changed.
+    public boolean refresh() throws IOException {
+        long before = version;
+        store.refresh(new Indexer());
+        if (version != before) {
+            onChanged.run();
+            return true;
+        }
+        return false;
+    }
+
+    // Saves what is queued, then releases the store
+    public void close() {
+        sorter.shutdownNow();
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        store.close();
+    }
+
+    public Student searchStudent(String roll) {
+        return students.get(key(roll));
+    }
+
+    public List<Student> searchByNamePrefix(String prefix) {
+        String from = key(prefix);
+        return new ArrayList<>(nameIndex.subMap(from, true, from + Character.MAX_VALUE, false).values());
+    }
+
+    public List<Student> searchByGrade(String grade) {
+        String from = key(grade) + SEPARATOR;
+        return new ArrayList<>(gradeIndex.subMap(from, true, from + Character.MAX_VALUE, false).values());
+    }
+
+    // Students whose roll or name starts with the prefix, roll matches first.
+    // Both lookups are tree range scans that stop after the limit, so the cost
+    // depends on the limit rather than the roster size.
+    public List<Student> searchPrefix(String prefix, int limit) {
+        String from = key(prefix);
+        String to = from + Character.MAX_VALUE;
+        Set<Student> result = new LinkedHashSet<>();
+        for (Student s : rollIndex.subMap(from, true, to, false).values()) {
+            if (result.size() >= limit) {
+                return new ArrayList<>(result);
+            }
+            result.add(s);
+        }
+        for (Student s : nameIndex.subMap(from, true, to, false).values()) {
+            if (result.size() >= limit) {
+                return new ArrayList<>(result);
+            }
+            result.add(s);
+        }
+        return new ArrayList<>(result);
+    }
+
+    public int size() {
+        return students.size();
+    }
+
+    // Every student in insertion order, as of one moment
+    public Student[] snapshot() {
+        long stamp = lock.readLock();
+        try {
+            return rows.toArray();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Opens a cursor over the students matching the filter, in the given
+    // order, as the roster stood at this moment
+    public Cursor cursor(SortKey sortKey, Predicate<Student> filter) {
+        if (sortKey == SortKey.NONE) {
+            return new Cursor(snapshot(), filter);
+        }
+        SortedRows cached = sortedRows;
+        if (cached == null || cached.sortKey != sortKey || cached.version != version) {
+            cached = sort(sortKey);
+            sortedRows = cached;
+        }
+        return new Cursor(cached.rows, filter);
+    }
+
+    // Filter for students whose name, roll or grade contains the text,
+    // ignoring case, without lower-casing every student
+    static Predicate<Student> containing(String text) {
+        String needle = text.trim();
+        if (needle.isEmpty()) {
+            return s -> true;
+        }
+        return s -> contains(s.getName(), needle) || contains(s.getRollNumber(), needle)
+                || contains(s.getGrade(), needle);
+    }
+
+    private static boolean contains(String value, String needle) {
+        for (int i = 0; i + needle.length() <= value.length(); i++) {
+            if (value.regionMatches(true, i, needle, 0, needle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Hands out matching students a page at a time. Works on a fixed array
+    // of references, so later changes to the roster do not disturb it.
+    static final class Cursor {
+        private final Student[] rows;
+        private final Predicate<Student> filter;
+        private int position;
+
+        Cursor(Student[] rows, Predicate<Student> filter) {
+            this.rows = rows;
+            this.filter = filter;
+        }
+
+        // Fills the caller's page with the next matches and returns how many;
+        // 0 means the end
+        public int next(Student[] page) {
+            int n = 0;
+            while (n < page.length && position < rows.length) {
+                Student s = rows[position++];
+                if (filter.test(s)) {
+                    page[n++] = s;
+                }
+            }
+            return n;
+        }
+
+        public boolean hasMore() {
+            return position < rows.length;
+        }
+    }
+
+    // Row at a position in the given order, or null if the roster has just
+    // shrunk below it. Sorted orders come from the last sorted copy, which may
+    // be a change or two behind, or null before the first one is ready; the
+    // change listener fires when a fresh copy is swapped in.
+    public Student getStudent(int row, SortKey sortKey) {
+        if (sortKey != SortKey.NONE) {
+            Student[] sorted = sortedView(sortKey);
+            return sorted != null && row < sorted.length ? sorted[row] : null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        Student s = null;
+        try {
+            s = rows.get(row);
+        } catch (RuntimeException e) {
+            // Raced with a writer; validate() fails and we read again below
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                s = rows.get(row);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return s;
+    }
+
+    // Position of a student in the given order, or -1
+    public int indexOf(Student s, SortKey sortKey) {
+        if (sortKey == SortKey.NONE) {
+            long stamp = lock.readLock();
+            try {
+                return rows.indexOf(key(s.getRollNumber()), s);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        Student[] sorted = sortedView(sortKey);
+        int i = sorted == null ? -1 : Arrays.binarySearch(sorted, s, comparator(sortKey));
+        return i >= 0 ? i : -1;
+    }
+
+    // The latest sorted copy in this order, or null; asks for a new one if
+    // it is missing or stale
+    private Student[] sortedView(SortKey sortKey) {
+        SortedRows cached = sortedRows;
+        if (cached == null || cached.sortKey != sortKey || cached.version != version) {
+            sortWanted = sortKey;
+            if (sorting.compareAndSet(false, true)) {
+                sorter.execute(this::sortInBackground);
+            }
+        }
+        return cached != null && cached.sortKey == sortKey ? cached.rows : null;
+    }
+
+    // Sorter thread. Requests made while a sort runs are not queued: the
+    // listener call at the end makes the table ask again, and it asks for
+    // another sort if this one is already behind.
+    private void sortInBackground() {
+        try {
+            sortedRows = sort(sortWanted);
+        } finally {
+            sorting.set(false);
+        }
+        onChanged.run();
+    }
+
+    private SortedRows sort(SortKey sortKey) {
+        Student[] sorted;
+        long sortedVersion;
+        long stamp = lock.readLock();
+        try {
+            sortedVersion = version;
+            sorted = rows.toArray();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        // Sort outside the lock so writers are not held up
+        Arrays.parallelSort(sorted, comparator(sortKey));
+        return new SortedRows(sortKey, sortedVersion, sorted);
+    }
+
+    // Every order ends on roll, which is unique, so binary search is exact
+    static Comparator<Student> comparator(SortKey sortKey) {
+        Comparator<Student> byRoll = Comparator.comparing(Student::getRollNumber, String.CASE_INSENSITIVE_ORDER);
+        return switch (sortKey) {
+            case NAME -> Comparator.comparing(Student::getName, String.CASE_INSENSITIVE_ORDER).thenComparing(byRoll);
+            case GRADE -> Comparator.comparing(Student::getGrade, String.CASE_INSENSITIVE_ORDER).thenComparing(byRoll);
+            default -> byRoll;
+        };
+    }
+
+    // Writer thread: applies and saves everything queued so far as one batch.
+    // If the save fails the store reloads memory from the files and every
+    // future in the batch completes with the error.
+    private void drain() {
+        List<Change> batch = new ArrayList<>();
+        Change change;
+        while ((change = queue.poll()) != null) {
+            batch.add(change);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        int[] results = new int[batch.size()];
+        long before = version;
+        IOException failure = null;
+        try {
+            store.commit(new Indexer(), new StudentStore.Changes() {
+                // Students added, removed or changed, in order; removals and
+                // changes are flagged
+                private final List<Student> applied = new ArrayList<>();
+                private final BitSet removals = new BitSet();
+                private final BitSet updates = new BitSet();
+
+                @Override
+                public int apply() {
+                    long stamp = lock.writeLock();
+                    try {
+                        for (int i = 0; i < batch.size(); i++) {
+                            Change c = batch.get(i);
+                            if (c.students != null) {
+                                int n = 0;
+                                for (Student s : c.students) {
+                                    if (indexStudent(s)) {
+                                        applied.add(s);
+                                        results[i]++;
+                                    }
+                                    // Let readers in now and then during a bulk import
+                                    if (++n % WRITE_CHUNK == 0) {
+                                        lock.unlockWrite(stamp);
+                                        stamp = lock.writeLock();
+                                    }
+                                }
+                            } else if (c.grade != null) {
+                                Student old = students.get(key(c.roll));
+                                if (old == null) {
+                                    continue;
+                                }
+                                results[i]++;
+                                if (!old.getGrade().equals(c.grade)) {
+                                    // Changed where it stands, so the row keeps its place
+                                    Student updated = new Student(old.getName(), old.getRollNumber(), c.grade);
+                                    replaceStudent(updated);
+                                    updates.set(applied.size());
+                                    applied.add(updated);
+                                }
+                            } else {
+                                Student removed = unindexStudent(c.roll);
+                                if (removed != null) {
+                                    removals.set(applied.size());
+                                    applied.add(removed);
+                                    results[i]++;
+                                }
+                            }
+                        }
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                    return applied.size();
+                }
+
+                @Override
+                public List<String> entries() {
+                    List<String> entries = new ArrayList<>(applied.size());
+                    for (int i = 0; i < applied.size(); i++) {
+                        Student s = applied.get(i);
+                        entries.add(removals.get(i) ? "-" + s.getRollNumber()
+                                : (updates.get(i) ? "=" : "+") + s.toFileFormat());
+                    }
+                    return entries;
+                }
+
+                @Override
+                public Iterable<String> records() {
+                    // Formatted one at a time as the store writes them
+                    Student[] all = snapshot();
+                    return () -> Arrays.stream(all).map(Student::toFileFormat).iterator();
+                }
+            });
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException | Error e) {
+            // Don't leave callers waiting on a writer that died
+            pendingChanges.addAndGet(-batch.size());
+            for (Change c : batch) {
+                c.result.completeExceptionally(e);
+            }
+            throw e;
+        }
+        pendingChanges.addAndGet(-batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (failure == null) {
+                batch.get(i).result.complete(results[i]);
+            } else {
+                batch.get(i).result.completeExceptionally(failure);
+            }
+        }
+        if (failure == null) {
+            onSaved.run();
+        } else {
+            onSaveError.accept(failure);
+        }
+        if (version != before) {
+            onChanged.run();
+        }
+    }
+
+    // Applies records read from disk; each one takes the write lock briefly
+    // so readers are never shut out for a whole file
+    private class Indexer implements StudentStore.Replay {
+        @Override
+        public void add(String[] fields) {
+            long stamp = lock.writeLock();
+            try {
+                indexStudent(new Student(fields[0], fields[1], fields[2]));
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public void remove(String roll) {
+            long stamp = lock.writeLock();
+            try {
+                unindexStudent(roll);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public void update(String[] fields) {
+            long stamp = lock.writeLock();
+            try {
+                replaceStudent(new Student(fields[0], fields[1], fields[2]));
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public void reset() {
+            long stamp = lock.writeLock();
+            try {
+                students.clear();
+                rows.clear();
+                rollIndex.clear();
+                nameIndex.clear();
+                gradeIndex.clear();
+                version++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    // Adds the student to every index; returns false if the roll is taken.
+    // Caller holds the write lock.
+    private boolean indexStudent(Student s) {
+        String roll = key(s.getRollNumber());
+        if (students.putIfAbsent(roll, s) != null) {
+            return false;
+        }
+        rows.add(roll, s);
+        rollIndex.put(roll, s);
+        nameIndex.put(key(s.getName()) + SEPARATOR + roll, s);
+        gradeIndex.put(key(s.getGrade()) + SEPARATOR + roll, s);
+        version++;
+        return true;
+    }
+
+    // Caller holds the write lock
+    private Student unindexStudent(String roll) {
+        Student s = students.remove(key(roll));
+        if (s != null) {
+            String k = key(s.getRollNumber());
+            rows.remove(k);
+            rollIndex.remove(k);
+            nameIndex.remove(key(s.getName()) + SEPARATOR + k);
+            gradeIndex.remove(key(s.getGrade()) + SEPARATOR + k);
+            version++;
+        }
+        return s;
+    }
+
+    // Puts a new record in place of the one with the same roll, keeping its
+    // row. Returns false if there is no such student. Caller holds the write lock.
+    private boolean replaceStudent(Student s) {
+        String roll = key(s.getRollNumber());
+        Student old = students.replace(roll, s);
+        if (old == null) {
+            return false;
+        }
+        rows.replace(roll, s);
+        rollIndex.put(roll, s);
+        nameIndex.remove(key(old.getName()) + SEPARATOR + roll);
+        nameIndex.put(key(s.getName()) + SEPARATOR + roll, s);
+        gradeIndex.remove(key(old.getGrade()) + SEPARATOR + roll);
+        gradeIndex.put(key(s.getGrade()) + SEPARATOR + roll, s);
+        version++;
+        return true;
+    }
+
+    // Lower-cased, trimmed form that rolls, names and grades are indexed by
+    static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
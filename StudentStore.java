@@ -0,0 +1,263 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+// On-disk home of the student roster, safe to share between processes.
+// The CSV snapshot (students.txt) is the base copy. In journal mode every add,
+// remove or change after it is appended to students.txt.log as "+<record>",
+// "-<roll>" or "=<record>", and the snapshot is only rewritten once the log passes a
+// threshold; otherwise every commit rewrites the snapshot. The log is
+// emptied whenever the snapshot is rewritten, so both modes can share files.
+//
+// Every commit holds an exclusive lock on students.txt.lock and first replays
+// whatever other processes wrote since this one last looked, so no process
+// ever overwrites changes it has not seen. Use one store per file per process.
+class StudentStore {
+    // Receives records in file order
+    interface Replay {
+        void add(String[] fields);
+
+        void remove(String roll);
+
+        // Replaces the record with the same roll where it stands
+        void update(String[] fields);
+
+        // Another process replaced the snapshot: forget everything, a full
+        // reload follows
+        void reset();
+    }
+
+    // Called by commit() with the lock held, after catching up
+    interface Changes {
+        // Applies the pending changes in memory and returns how many took effect
+        int apply();
+
+        // Log entries for the changes just applied, when they are appended
+        List<String> entries();
+
+        // Every record, when the snapshot is rewritten instead
+        Iterable<String> records();
+    }
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final Path lockFile;
+    private final boolean journaled;
+    private final int compactThreshold;
+    private FileChannel lockChannel;
+
+    // What this process last saw on disk
+    private List<Object> snapshotVersion;
+    private long logOffset;
+    private int logEntries;
+    // A commit failed and memory may not match the files; reload on next use
+    private boolean stale;
+
+    public StudentStore(String snapshotFileName, boolean journaled, int compactThreshold) {
+        this.snapshotFile = Paths.get(snapshotFileName);
+        this.logFile = Paths.get(snapshotFileName + ".log");
+        this.lockFile = Paths.get(snapshotFileName + ".lock");
+        this.journaled = journaled;
+        this.compactThreshold = compactThreshold;
+    }
+
+    // Reads the snapshot and then the log
+    public synchronized void load(Replay replay) throws IOException {
+        FileLock lock = lock(true);
+        try {
+            readAll(replay);
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Picks up changes other processes have committed since the last call
+    public synchronized void refresh(Replay replay) throws IOException {
+        FileLock lock = lock(true);
+        try {
+            catchUp(replay);
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Catches up, lets the caller apply its changes, then writes them out,
+    // all without another process getting in between. If the write fails,
+    // memory is reloaded from the files so it never holds changes that were
+    // not saved; if even that fails, the next call reloads.
+    public synchronized void commit(Replay replay, Changes changes) throws IOException {
+        FileLock lock = lock(false);
+        try {
+            catchUp(replay);
+            int applied = changes.apply();
+            if (applied == 0) {
+                return;
+            }
+            try {
+                // A big batch, such as a bulk import, goes straight into the snapshot
+                if (!journaled || logEntries + applied >= compactThreshold) {
+                    writeSnapshot(changes.records());
+                } else {
+                    append(changes.entries());
+                }
+            } catch (IOException | RuntimeException e) {
+                stale = true;
+                try {
+                    replay.reset();
+                    readAll(replay);
+                } catch (IOException reload) {
+                    e.addSuppressed(reload);
+                }
+                throw e;
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    private FileLock lock(boolean shared) throws IOException {
+        if (lockChannel == null) {
+            lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return lockChannel.lock(0, Long.MAX_VALUE, shared);
+    }
+
+    private void readAll(Replay replay) throws IOException {
+        snapshotVersion = version(snapshotFile);
+        for (String[] fields : StudentFileLoader.load(snapshotFile.toString())) {
+            replay.add(fields);
+        }
+        logOffset = 0;
+        logEntries = 0;
+        readLog(replay);
+        stale = false;
+    }
+
+    private void catchUp(Replay replay) throws IOException {
+        long logSize = Files.exists(logFile) ? Files.size(logFile) : 0;
+        if (stale || !Objects.equals(version(snapshotFile), snapshotVersion) || logSize < logOffset) {
+            replay.reset();
+            readAll(replay);
+        } else if (logSize > logOffset) {
+            readLog(replay);
+        }
+    }
+
+    // A rewritten snapshot is a new file, so its identity changes even when
+    // the size and timestamp happen to match
+    private static List<Object> version(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        return Arrays.asList(attrs.fileKey(), attrs.lastModifiedTime(), attrs.size());
+    }
+
+    // Replays the log from where this process last stopped. The log is
+    // bounded by the compaction threshold, so it is read in one go.
+    private void readLog(Replay replay) throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        byte[] bytes;
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, channel.size() - logOffset));
+            while (buffer.hasRemaining() && channel.read(buffer, logOffset + buffer.position()) >= 0) {
+                // keep reading
+            }
+            bytes = buffer.array();
+        }
+        // Anything after the last newline is a torn write from a crash
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                replayEntry(new String(bytes, start, i - start, StandardCharsets.UTF_8), replay);
+                start = i + 1;
+            }
+        }
+        logOffset += start;
+    }
+
+    private void replayEntry(String entry, Replay replay) {
+        if (entry.length() < 2) {
+            return;
+        }
+        logEntries++;
+        if (entry.charAt(0) == '+') {
+            String[] fields = StudentFileLoader.parseLine(entry.substring(1));
+            if (fields != null) {
+                replay.add(fields);
+            }
+        } else if (entry.charAt(0) == '-') {
+            replay.remove(entry.substring(1).trim());
+        } else if (entry.charAt(0) == '=') {
+            String[] fields = StudentFileLoader.parseLine(entry.substring(1));
+            if (fields != null) {
+                replay.update(fields);
+            }
+        }
+    }
+
+    private void append(List<String> entries) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String entry : entries) {
+            sb.append(entry).append('\n');
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(sb.toString());
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Cut off a torn tail so the new entries start on a fresh line
+            if (channel.size() > logOffset) {
+                channel.truncate(logOffset);
+            }
+            long position = logOffset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            // A change counts as saved only once it is on the disk
+            channel.force(false);
+            logOffset = position;
+        }
+        logEntries += entries.size();
+    }
+
+    // Writes the snapshot to a temporary file, syncs it and moves it into
+    // place before dropping the log. A crash in between only means the log is
+    // replayed over a snapshot that already contains it, which is harmless.
+    private void writeSnapshot(Iterable<String> records) throws IOException {
+        Path tmp = Paths.get(snapshotFile + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile());
+             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
+            for (String record : records) {
+                bw.write(record);
+                bw.newLine();
+            }
+            bw.flush();
+            out.getFD().sync();
+        }
+        try {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(logFile);
+        snapshotVersion = version(snapshotFile);
+        logOffset = 0;
+        logEntries = 0;
+    }
+}
@@ -0,0 +1,150 @@
+// Hierarchical timing wheel: many timeouts driven by one thread.
+// Time moves in ticks. Level 0 has a slot for each of the next 64 ticks,
+// level 1 a slot for each of the next 64 runs of 64 ticks, and so on up to
+// LEVELS. A timeout goes into the finest level that reaches its deadline,
+// and when the clock enters a coarse slot its timeouts are moved down a
+// level. Scheduling and cancelling cost the same however many timeouts are
+// pending, and each tick only looks at one slot.
+//
+// Not thread-safe: schedule, cancel and advance all belong to one thread,
+// such as a server's selector loop.
+class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    // A pending task; slots are doubly linked lists so cancel is O(1)
+    static final class Timeout {
+        private final long deadline;
+        private final Runnable task;
+        private Timeout prev;
+        private Timeout next;
+        private Timeout[] bucket;
+        private int slot;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public boolean isPending() {
+            return bucket != null;
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Timeout[][] wheels = new Timeout[LEVELS][SLOTS];
+    // Last tick processed
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickNanos, long startNanos) {
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Runs task on the advancing thread once delayNanos have passed; it
+    // fires on the first advance at or after the tick the delay ends in
+    public Timeout schedule(long delayNanos, Runnable task) {
+        long due = System.nanoTime() + delayNanos;
+        // Rounded up, so a timeout never fires early
+        long deadline = Math.max(currentTick + 1, (due - startNanos + tickNanos - 1) / tickNanos);
+        Timeout timeout = new Timeout(deadline, task);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    public void cancel(Timeout timeout) {
+        if (timeout != null && timeout.isPending()) {
+            unlink(timeout);
+            size--;
+        }
+    }
+
+    // Fires everything due by nowNanos and returns how many fired
+    public int advance(long nowNanos) {
+        long target = (nowNanos - startNanos) / tickNanos;
+        int fired = 0;
+        while (currentTick < target) {
+            long tick = ++currentTick;
+            // Entering a new run of slots on a level: move its timeouts down
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) ((tick >>> (SLOT_BITS * level)) & MASK));
+                }
+            }
+            Timeout[] bucket = wheels[0];
+            int slot = (int) (tick & MASK);
+            Timeout t;
+            while ((t = bucket[slot]) != null) {
+                unlink(t);
+                size--;
+                fired++;
+                t.task.run();
+            }
+        }
+        return fired;
+    }
+
+    // Time until the next tick starts, for sizing a select() timeout
+    public long nanosToNextTick(long nowNanos) {
+        long next = startNanos + (currentTick + 1) * tickNanos;
+        return Math.max(0, next - nowNanos);
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout t = wheels[level][slot];
+        wheels[level][slot] = null;
+        while (t != null) {
+            Timeout next = t.next;
+            t.prev = null;
+            t.next = null;
+            t.bucket = null;
+            place(t);
+            t = next;
+        }
+    }
+
+    // Finest level whose window, counted in that level's slots from the
+    // current one, still reaches the deadline
+    private void place(Timeout t) {
+        int level = 0;
+        while (level < LEVELS - 1
+                && (t.deadline >>> (SLOT_BITS * level)) - (currentTick >>> (SLOT_BITS * level)) >= SLOTS) {
+            level++;
+        }
+        long slotIndex = t.deadline >>> (SLOT_BITS * level);
+        long last = (currentTick >>> (SLOT_BITS * level)) + SLOTS - 1;
+        // Beyond the top level: park in its last slot and look again later
+        int slot = (int) (Math.min(slotIndex, last) & MASK);
+        Timeout[] bucket = wheels[level];
+        t.bucket = bucket;
+        t.slot = slot;
+        t.next = bucket[slot];
+        if (t.next != null) {
+            t.next.prev = t;
+        }
+        bucket[slot] = t;
+    }
+
+    private void unlink(Timeout t) {
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            t.bucket[t.slot] = t.next;
+        }
+        if (t.next != null) {
+            t.next.prev = t.prev;
+        }
+        t.prev = null;
+        t.next = null;
+        t.bucket = null;
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+// Durable journal of ledger transactions.
+// Each transaction is a fixed 40-byte record:
+//   sequence (long), op (int), CRC32 of the other fields (int),
+//   account (long), other account (long), amount in paise (long)
+// With group commit, callers add records to a shared buffer and a flusher
+// thread writes and fsyncs the whole batch at once; each caller returns once
+// its batch is on disk. Without it every record gets its own fsync.
+class TransactionJournal implements Closeable {
+    static final int OPEN = 1;
+    static final int DEPOSIT = 2;
+    static final int WITHDRAW = 3;
+    static final int TRANSFER = 4;
+
+    static final int RECORD_SIZE = 40;
+    private static final int BATCH_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final boolean groupCommit;
+    private final CRC32 crc = new CRC32();
+    private final byte[] crcScratch = new byte[RECORD_SIZE];
+    private long sequence;
+
+    // Group commit state, guarded by this
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE * BATCH_RECORDS);
+    private ByteBuffer writing = ByteBuffer.allocate(RECORD_SIZE * BATCH_RECORDS);
+    private long fillingBatch;
+    private long durableBatch = -1;
+    private boolean closed;
+    private boolean deferSync;
+    private IOException failure;
+    private Thread flusher;
+
+    // validLength is what replay() returned for the file. Everything after
+    // it, a torn record or a damaged one and whatever follows, is cut off,
+    // so new records are never appended behind a record replay stops at.
+    public TransactionJournal(String fileName, boolean groupCommit, long validLength) throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        this.groupCommit = groupCommit;
+        long valid = Math.min(validLength, channel.size() - channel.size() % RECORD_SIZE);
+        channel.truncate(valid);
+        channel.position(valid);
+        sequence = valid / RECORD_SIZE;
+        if (groupCommit) {
+            flusher = new Thread(this::flushLoop, "transaction-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    // When deferred, record() returns without waiting for the disk and
+    // sync() must be called to make the records durable
+    public synchronized void setDeferredSync(boolean deferred) {
+        deferSync = deferred;
+    }
+
+    // Returns once the record is durable on disk, unless sync is deferred
+    public void record(int op, long account, long other, long paise) throws IOException {
+        awaitDurable(append(op, account, other, paise));
+    }
+
+    // Adds the record and returns a ticket to pass to awaitDurable. A caller
+    // that needs records in the same order as its changes calls this while
+    // still holding the locks it made the change under, and waits after
+    // letting go. Once a write fails every later call throws.
+    public long append(int op, long account, long other, long paise) throws IOException {
+        if (!groupCommit) {
+            synchronized (this) {
+                checkOpen();
+                ByteBuffer buf = pending;
+                buf.clear();
+                put(buf, op, account, other, paise);
+                buf.flip();
+                try {
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                    if (!deferSync) {
+                        channel.force(false);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    throw e;
+                }
+            }
+            return -1;
+        }
+        synchronized (this) {
+            while (pending.remaining() < RECORD_SIZE && failure == null && !closed) {
+                waitQuietly();
+            }
+            checkOpen();
+            put(pending, op, account, other, paise);
+            notifyAll();
+            return deferSync ? -1 : fillingBatch;
+        }
+    }
+
+    // Waits until everything recorded so far is on disk
+    public void sync() throws IOException {
+        if (!groupCommit) {
+            synchronized (this) {
+                channel.force(false);
+            }
+            return;
+        }
+        synchronized (this) {
+            awaitDurable(pending.position() > 0 ? fillingBatch : fillingBatch - 1);
+        }
+    }
+
+    // Waits until the batch holding an appended record is on disk
+    public synchronized void awaitDurable(long batch) throws IOException {
+        while (durableBatch < batch && failure == null) {
+            waitQuietly();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long batch;
+            ByteBuffer buf;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    waitQuietly();
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                buf = pending;
+                pending = writing;
+                writing = buf;
+                pending.clear();
+                batch = fillingBatch++;
+                notifyAll();
+            }
+            try {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durableBatch = batch;
+                notifyAll();
+            }
+        }
+    }
+
+    // Applies every intact record to the ledger without balance checks: the
+    // journal only holds transactions that already succeeded, and sums do not
+    // depend on the order they were written in. Stops at the first record
+    // that fails its checksum and returns the length of the file up to it.
+    public static long replay(String fileName, Ledger ledger) throws IOException {
+        Path path = Paths.get(fileName);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        byte[] scratch = new byte[RECORD_SIZE];
+        try (InputStream in = new BufferedInputStream(new FileInputStream(path.toFile()), 1 << 16)) {
+            ByteBuffer record = ByteBuffer.wrap(scratch);
+            while (in.readNBytes(scratch, 0, RECORD_SIZE) == RECORD_SIZE) {
+                record.clear();
+                record.getLong();
+                int op = record.getInt();
+                int storedCrc = record.getInt();
+                long account = record.getLong();
+                long other = record.getLong();
+                long paise = record.getLong();
+                if (storedCrc != checksum(crc, scratch)) {
+                    break;
+                }
+                valid += RECORD_SIZE;
+                if (op == OPEN) {
+                    ledger.open(account, paise);
+                    continue;
+                }
+                BankAccount from = ledger.get(account);
+                if (from == null) {
+                    throw new IOException("Journal refers to unknown account " + account);
+                }
+                switch (op) {
+                    case DEPOSIT -> from.applyJournaled(paise);
+                    case WITHDRAW -> from.applyJournaled(-paise);
+                    case TRANSFER -> {
+                        BankAccount to = ledger.get(other);
+                        if (to == null) {
+                            throw new IOException("Journal refers to unknown account " + other);
+                        }
+                        from.applyJournaled(-paise);
+                        to.applyJournaled(paise);
+                    }
+                    default -> throw new IOException("Unknown journal op " + op);
+                }
+            }
+        }
+        return valid;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.close();
+    }
+
+    private void put(ByteBuffer buf, int op, long account, long other, long paise) {
+        int start = buf.position();
+        buf.putLong(sequence++).putInt(op).putInt(0).putLong(account).putLong(other).putLong(paise);
+        buf.get(start, crcScratch, 0, RECORD_SIZE);
+        buf.putInt(start + 12, checksum(crc, crcScratch));
+    }
+
+    // CRC32 of the record with the checksum field itself left out
+    private static int checksum(CRC32 crc, byte[] record) {
+        crc.reset();
+        crc.update(record, 0, 12);
+        crc.update(record, 16, RECORD_SIZE - 16);
+        return (int) crc.getValue();
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+    }
+
+    private void waitQuietly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}